@@ -29,7 +29,7 @@ import android.widget.TextView;
 import androidx.fragment.app.Fragment;
 
 import com.redcoracle.episodes.services.AddShowTask;
-import com.redcoracle.episodes.services.AsyncTask;
+import com.redcoracle.episodes.services.TaskScheduler;
 import com.redcoracle.episodes.tvdb.Show;
 
 import java.text.DateFormat;
@@ -112,6 +112,9 @@ public class AddShowPreviewFragment
 	}
 
 	private void addShow() {
-		new AsyncTask().executeAsync(new AddShowTask(show.getId(), show.getName(), show.getLanguage()));
+		EpisodesApplication.getInstance().getTaskScheduler().submit(
+			TaskScheduler.Priority.USER,
+			AddShowTask.key(show.getId()),
+			new AddShowTask(show.getId(), show.getName(), show.getLanguage()));
 	}
 }
@@ -35,7 +35,6 @@ import androidx.loader.app.LoaderManager;
 import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
-import com.redcoracle.episodes.tvdb.Client;
 import com.redcoracle.episodes.tvdb.Show;
 
 import java.util.List;
@@ -118,20 +117,11 @@ public class AddShowSearchFragment
 
 		@Override
 		public List<Show> loadInBackground() {
-			Client tmdbClient = new Client();
 			String language = preferences.getString("pref_language", "en");
 
-			List<Show> results = tmdbClient.searchShows(query, language);
-
-			// If there are no results, try searching all languages or substituting &
-			if (results.size() == 0 && query.contains(" and ")) {
-				results = tmdbClient.searchShows(query.replace(" and ", " & "), null);
-			}
-			if (results.size() == 0) {
-				results =  tmdbClient.searchShows(query, null);
-			}
-
-			return results;
+			// Falls back to searching all languages or substituting & if
+			// there are no results, and caches what it finds.
+			return EpisodesApplication.getInstance().getShowSearch().search(query, language);
 		}
 
 		@Override
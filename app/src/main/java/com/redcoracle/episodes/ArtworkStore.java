@@ -0,0 +1,259 @@
+package com.redcoracle.episodes;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.redcoracle.episodes.db.ShowsProvider;
+import com.redcoracle.episodes.db.ShowsTable;
+import com.redcoracle.episodes.tvdb.TmdbImages;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Keeps a local copy of each show's banner and poster, so the library can
+ * be displayed without a network connection. Artwork is downloaded when
+ * shows are added or refreshed rather than when first displayed.
+ *
+ * Files are named after the artwork's TMDB path and rendition. TMDB gives
+ * changed artwork a new path, so a stored file never needs replacing, and
+ * shows which share artwork share a file.
+ */
+public class ArtworkStore {
+    private static final String TAG = ArtworkStore.class.getName();
+
+    private static final String ARTWORK_DIR = "artwork";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Once the store grows past this, the artwork which a refresh last
+    // asked for longest ago is removed first.
+    private static final long MAX_SIZE = 100 * 1024 * 1024;
+
+    private final Context context;
+    private final File dir;
+    private final String posterRendition;
+    private final OkHttpClient client;
+
+    // Names of the stored files, so that looking artwork up while binding
+    // views doesn't touch the file system.
+    private final Set<String> stored =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    ArtworkStore(Context context, OkHttpClient client) {
+        this.context = context;
+        this.dir = new File(context.getFilesDir(), ARTWORK_DIR);
+        this.client = client;
+
+        // Posters fill the show header, which spans the screen. One
+        // rendition is stored for whichever orientation is wider, as the
+        // header picks its size each time it's created.
+        final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        final int screenWidth = Math.max(metrics.widthPixels, metrics.heightPixels);
+        final int headerHeight =
+                context.getResources().getDimensionPixelSize(R.dimen.show_header_image_height);
+        this.posterRendition = TmdbImages.posterRendition(
+                Math.max(screenWidth, TmdbImages.posterWidth(headerHeight)));
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, String.format("Unable to create artwork directory %s", dir));
+        }
+        final String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // Left behind by a download which was interrupted.
+                    new File(dir, name).delete();
+                } else {
+                    stored.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns what Glide should load for a show's banner displayed width
+     * pixels wide: the stored file if there is one in the rendition for
+     * that width, otherwise its URL. Returns null if bannerPath is empty.
+     */
+    public Object getBanner(String bannerPath, int width) {
+        return get(TmdbImages.backdropRendition(width), bannerPath);
+    }
+
+    /** Returns what Glide should load for a show's poster, as getBanner(). */
+    public Object getPoster(String posterPath) {
+        return get(posterRendition, posterPath);
+    }
+
+    private Object get(String rendition, String path) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        final String name = fileName(rendition, path);
+        if (stored.contains(name)) {
+            return new File(dir, name);
+        }
+        return TmdbImages.url(rendition, path);
+    }
+
+    /**
+     * Downloads any artwork of the shows at showsUri which isn't already
+     * stored, and marks that which is as recently used. Shows lists are
+     * told to reload if anything was downloaded, so they switch to the
+     * stored files. Returns the number of files downloaded.
+     */
+    public int sync(ContentResolver resolver, Uri showsUri) {
+        final String[] projection = {
+                ShowsTable.COLUMN_BANNER_PATH,
+                ShowsTable.COLUMN_POSTER_PATH
+        };
+        final Cursor cursor = resolver.query(showsUri, projection, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+
+        // Banners are stored at the shows list's width, as it's laid out
+        // now, so the list finds them when it next loads.
+        final String bannerRendition =
+                TmdbImages.backdropRendition(ShowsListFragment.getBannerWidth(context));
+        final Set<String> synced = new HashSet<>();
+        int downloaded = 0;
+        try {
+            final int bannerColumnIndex = cursor.getColumnIndexOrThrow(ShowsTable.COLUMN_BANNER_PATH);
+            final int posterColumnIndex = cursor.getColumnIndexOrThrow(ShowsTable.COLUMN_POSTER_PATH);
+            while (cursor.moveToNext()) {
+                downloaded += syncFile(bannerRendition, cursor.getString(bannerColumnIndex), synced);
+                downloaded += syncFile(posterRendition, cursor.getString(posterColumnIndex), synced);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (downloaded > 0) {
+            resolver.notifyChange(ShowsProvider.CONTENT_URI_SHOWS, null);
+        }
+        Log.i(TAG, String.format("Synced artwork of %s: %d files downloaded", showsUri, downloaded));
+        return downloaded;
+    }
+
+    // Returns 1 if the file was downloaded, 0 otherwise.
+    private int syncFile(String rendition, String path, Set<String> synced) {
+        if (path == null || path.isEmpty()) {
+            return 0;
+        }
+        final String name = fileName(rendition, path);
+        if (!synced.add(name)) {
+            return 0;
+        }
+
+        final File file = new File(dir, name);
+        if (stored.contains(name) && file.exists()) {
+            file.setLastModified(System.currentTimeMillis());
+            return 0;
+        }
+
+        final Request request = new Request.Builder().url(TmdbImages.url(rendition, path)).build();
+        File temp = null;
+        try (Response response = client.newCall(request).execute()) {
+            final ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                Log.w(TAG, String.format("Error downloading artwork %s: HTTP %d", path, response.code()));
+                return 0;
+            }
+
+            // Written to a temporary file first, so a partial download is
+            // never mistaken for stored artwork.
+            temp = File.createTempFile(name, TEMP_SUFFIX, dir);
+            try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(temp)) {
+                final byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+            temp = null;
+            stored.add(name);
+            return 1;
+        } catch (IOException e) {
+            Log.w(TAG, String.format("Error downloading artwork %s: %s", path, e.toString()));
+            return 0;
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used artwork until the store is within
+     * its size limit.
+     */
+    public void trim() {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        final long[] lastModified = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            size += files[i].length();
+            lastModified[i] = files[i].lastModified();
+        }
+        if (size <= MAX_SIZE) {
+            return;
+        }
+
+        // Sort oldest first. Timestamps are read once up front, as sorting
+        // by lastModified() directly would stat each file repeatedly.
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(lastModified[a], lastModified[b]);
+            }
+        });
+
+        int removed = 0;
+        for (int i = 0; i < order.length && size > MAX_SIZE; i++) {
+            final File file = files[order[i]];
+            final long length = file.length();
+            stored.remove(file.getName());
+            if (file.delete()) {
+                size -= length;
+                removed++;
+            }
+        }
+        Log.i(TAG, String.format("Trimmed artwork store: %d files removed, %d KiB remaining",
+                removed, size / 1024));
+    }
+
+    private static String fileName(String rendition, String path) {
+        // TMDB paths are a single file name with a leading slash.
+        final String file = path.startsWith("/") ? path.substring(1) : path;
+        return rendition + "_" + file.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -34,8 +34,8 @@ import android.util.Log;
 
 import androidx.core.net.ConnectivityManagerCompat;
 
-import com.redcoracle.episodes.services.AsyncTask;
 import com.redcoracle.episodes.services.RefreshAllShowsTask;
+import com.redcoracle.episodes.services.TaskScheduler;
 
 public class AutoRefreshHelper implements SharedPreferences.OnSharedPreferenceChangeListener {
 	private static final String TAG = AutoRefreshHelper.class.getName();
@@ -176,7 +176,8 @@ public class AutoRefreshHelper implements SharedPreferences.OnSharedPreferenceCh
 
 			if (helper.checkNetwork() && helper.checkBackup()) {
 				Log.i(TAG, "Refreshing all shows.");
-				new AsyncTask().executeAsync(new RefreshAllShowsTask());
+				EpisodesApplication.getInstance().getTaskScheduler().submit(
+					TaskScheduler.Priority.BACKGROUND, RefreshAllShowsTask.KEY, new RefreshAllShowsTask());
 				helper.setPrevAutoRefreshTime(System.currentTimeMillis());
 				helper.rescheduleAlarm();
 			} else {
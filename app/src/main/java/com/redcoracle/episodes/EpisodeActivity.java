@@ -86,19 +86,11 @@ public class EpisodeActivity
 		String[] projection = {
 			EpisodesTable.COLUMN_ID
 		};
-		String selection = String.format("%s=? AND %s=?",
-		                                 EpisodesTable.COLUMN_SHOW_ID,
-		                                 EpisodesTable.COLUMN_SEASON_NUMBER);
-		String[] selectionArgs = {
-			String.valueOf(showId),
-			String.valueOf(seasonNumber)
-		};
-
 		return new CursorLoader(this,
-		                        ShowsProvider.CONTENT_URI_EPISODES,
+		                        ShowsProvider.getSeasonEpisodesUri(showId, seasonNumber),
 		                        projection,
-		                        selection,
-		                        selectionArgs,
+		                        null,
+		                        null,
 		                        EpisodesTable.COLUMN_EPISODE_NUMBER + " ASC");
 	}
 
@@ -23,12 +23,49 @@ import android.app.NotificationManager;
 import android.os.Build;
 import android.util.Log;
 
+import com.redcoracle.episodes.services.TaskScheduler;
+import com.redcoracle.episodes.tvdb.CacheOverrideInterceptor;
+import com.redcoracle.episodes.tvdb.ConditionalRequestInterceptor;
+import com.redcoracle.episodes.tvdb.SearchCache;
+import com.redcoracle.episodes.tvdb.ShowSearch;
 import com.uwetrottmann.tmdb2.Tmdb;
 
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
 public class EpisodesApplication extends Application {
     private static final String TAG = EpisodesApplication.class.getName();
+
+    // Upper bound on concurrent requests to the TMDB API host, eg. when
+    // fetching every season of a show in parallel.
+    private static final int TMDB_MAX_REQUESTS_PER_HOST = 4;
+
+    // HTTP response cache for TMDB API requests, kept in the app's cache
+    // directory so the system can reclaim it when space runs low.
+    private static final String TMDB_HTTP_CACHE_DIR = "tmdb-http";
+    private static final long TMDB_HTTP_CACHE_SIZE = 20 * 1024 * 1024;
+
+    // Connections to the TMDB host are kept alive between refreshes of
+    // consecutive shows rather than being re-established for each one.
+    private static final int TMDB_MAX_IDLE_CONNECTIONS = TMDB_MAX_REQUESTS_PER_HOST;
+    private static final long TMDB_KEEP_ALIVE_MINUTES = 5;
+
+    private static final String SEARCH_CACHE_DIR = "search";
+
     private static EpisodesApplication instance;
+    private OkHttpClient httpClient;
     private Tmdb tmdbClient;
+    private Cache tmdbHttpCache;
+    private ConditionalRequestInterceptor conditionalRequests;
+    private ShowSearch showSearch;
+    private ArtworkStore artworkStore;
+    private TaskScheduler taskScheduler;
 
     @Override
     public void onCreate() {
@@ -36,12 +73,19 @@ public class EpisodesApplication extends Application {
 
         instance = this;
 
+        this.httpClient = createHttpClient();
+
         try {
-            this.tmdbClient = new Tmdb(BuildConfig.TMDB_KEY);
+            this.tmdbClient = createTmdbClient();
+            this.showSearch = new ShowSearch(
+                    this.tmdbClient, new SearchCache(new File(getCacheDir(), SEARCH_CACHE_DIR)));
         } catch (Exception e) {
             Log.d(TAG, "Error initialising TmdbClient", e);
         }
 
+        this.artworkStore = new ArtworkStore(this, this.httpClient);
+        this.taskScheduler = new TaskScheduler();
+
         createNotificationChannel();
     }
 
@@ -49,10 +93,96 @@ public class EpisodesApplication extends Application {
         return instance;
     }
 
+    /**
+     * Returns the HTTP client artwork is downloaded with. The TMDB client
+     * shares its connection pool and dispatcher, so every request the app
+     * makes to TMDB's hosts is pooled and limited together.
+     */
+    public OkHttpClient getHttpClient() {
+        return this.httpClient;
+    }
+
     public Tmdb getTmdbClient() {
         return this.tmdbClient;
     }
 
+    public ConditionalRequestInterceptor getConditionalRequests() {
+        return this.conditionalRequests;
+    }
+
+    public ShowSearch getShowSearch() {
+        return this.showSearch;
+    }
+
+    public ArtworkStore getArtworkStore() {
+        return this.artworkStore;
+    }
+
+    public TaskScheduler getTaskScheduler() {
+        return this.taskScheduler;
+    }
+
+    public Cache getTmdbHttpCache() {
+        return this.tmdbHttpCache;
+    }
+
+    private OkHttpClient createHttpClient() {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(TMDB_MAX_REQUESTS_PER_HOST);
+
+        // OkHttp negotiates HTTP/2 and transparently requests and
+        // decompresses gzip responses by default, so neither needs
+        // configuring here.
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(
+                        TMDB_MAX_IDLE_CONNECTIONS, TMDB_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .build();
+    }
+
+    private Tmdb createTmdbClient() {
+        this.conditionalRequests = new ConditionalRequestInterceptor();
+        this.tmdbHttpCache = new Cache(new File(getCacheDir(), TMDB_HTTP_CACHE_DIR), TMDB_HTTP_CACHE_SIZE);
+
+        // Overrides for responses that rarely or never change, which TMDB
+        // otherwise only allows to be cached briefly. A season's episodes
+        // are still revalidated with conditional requests whenever a
+        // refresh has their validators.
+        final CacheOverrideInterceptor cacheOverrides = new CacheOverrideInterceptor()
+                .maxAge("/3/find/.*", 7, TimeUnit.DAYS)
+                .maxAge("/3/tv/\\d+/season/\\d+", 6, TimeUnit.HOURS)
+                .maxAge("/3/search/tv", 1, TimeUnit.DAYS);
+
+        return new Tmdb(BuildConfig.TMDB_KEY) {
+            @Override
+            protected void setOkHttpClientDefaults(OkHttpClient.Builder builder) {
+                // Added ahead of the Tmdb interceptor, so it sees request
+                // URLs as Client does, before the API key is appended.
+                builder.addInterceptor(conditionalRequests);
+                super.setOkHttpClientDefaults(builder);
+
+                builder.dispatcher(httpClient.dispatcher());
+                builder.connectionPool(httpClient.connectionPool());
+                builder.cache(tmdbHttpCache);
+                builder.addNetworkInterceptor(cacheOverrides);
+            }
+        };
+    }
+
+    /**
+     * Summarises how many TMDB requests were served by the HTTP cache or
+     * answered with 304 Not Modified, rather than downloaded in full.
+     */
+    public String getTmdbCacheStats() {
+        return String.format(Locale.ROOT,
+                "%d requests: %d cache hits, %d network; %d conditional, %d not modified",
+                tmdbHttpCache.requestCount(),
+                tmdbHttpCache.hitCount(),
+                tmdbHttpCache.networkCount(),
+                conditionalRequests.conditionalCount(),
+                conditionalRequests.notModifiedCount());
+    }
+
     private void createNotificationChannel(){
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             CharSequence name = getString(R.string.channel_name);
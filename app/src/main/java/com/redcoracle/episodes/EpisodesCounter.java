@@ -17,21 +17,17 @@
 
 package com.redcoracle.episodes;
 
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.util.SparseIntArray;
 
-import com.redcoracle.episodes.db.EpisodesTable;
-
-import java.util.Collections;
-import java.util.Date;
-import java.util.Set;
-import java.util.TreeSet;
+import com.redcoracle.episodes.db.ShowProgressTable;
 
+// Holds episode counts keyed by an int column. Lookups return primitives
+// straight from the sparse arrays, so reading them while binding or
+// filtering list rows doesn't allocate.
 public class EpisodesCounter
 {
 	private String keyColumn;
-	private Set<Integer> keys;
 	private SparseIntArray numAiredEpisodesMap;
 	private SparseIntArray numWatchedEpisodesMap;
 	private SparseIntArray numUpcomingEpisodesMap;
@@ -39,106 +35,48 @@ public class EpisodesCounter
 	public EpisodesCounter(String keyColumn) {
 		this.keyColumn = keyColumn;
 
-		SharedPreferences preferences = Preferences.getSharedPreferences();
-
-		if (preferences.getBoolean("reverse_sort_order", false)) {
-			keys = new TreeSet<Integer>(Collections.reverseOrder());
-		} else {
-			keys = new TreeSet<Integer>();
-		}
-
-		// keys = new TreeSet<Integer>();
 		numAiredEpisodesMap = new SparseIntArray();
 		numWatchedEpisodesMap = new SparseIntArray();
 		numUpcomingEpisodesMap = new SparseIntArray();
 	}
 
-	public void swapCursor(Cursor episodesCursor) {
-		keys.clear();
+	// Loads counts which have already been aggregated by the database, one
+	// row per key, as returned by ShowsProvider.CONTENT_URI_SHOW_PROGRESS.
+	public void swapCountsCursor(Cursor countsCursor) {
 		numAiredEpisodesMap.clear();
 		numWatchedEpisodesMap.clear();
 		numUpcomingEpisodesMap.clear();
 
-		if (episodesCursor == null || episodesCursor.moveToFirst() == false) {
+		if (countsCursor == null || countsCursor.moveToFirst() == false) {
 			return;
 		}
 
-		do {
-			final int keyColumnIndex =
-				episodesCursor.getColumnIndexOrThrow(keyColumn);
-			final int key = episodesCursor.getInt(keyColumnIndex);
-
-			// check if episode is aired, watched, or upcoming
-			final int seasonNumberColumnIndex =
-				episodesCursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SEASON_NUMBER);
-			final int seasonNumber =
-				episodesCursor.getInt(seasonNumberColumnIndex);
-
-			final int firstAiredColumnIndex =
-				episodesCursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_FIRST_AIRED);
-			Date firstAired = null;
-			if (!episodesCursor.isNull(firstAiredColumnIndex)) {
-				firstAired =
-					new Date(episodesCursor.getLong(firstAiredColumnIndex)
-					         * 1000);
-			}
-
-			final int watchedColumnIndex =
-				episodesCursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_WATCHED);
-			final boolean watched =
-				episodesCursor.getInt(watchedColumnIndex) > 0 ? true : false;
+		final int keyColumnIndex =
+			countsCursor.getColumnIndexOrThrow(keyColumn);
+		final int airedColumnIndex =
+			countsCursor.getColumnIndexOrThrow(ShowProgressTable.COLUMN_NUM_AIRED);
+		final int watchedColumnIndex =
+			countsCursor.getColumnIndexOrThrow(ShowProgressTable.COLUMN_NUM_WATCHED);
+		final int upcomingColumnIndex =
+			countsCursor.getColumnIndexOrThrow(ShowProgressTable.COLUMN_NUM_UPCOMING);
 
-
-			if (keys.contains(key) == false) {
-				keys.add(key);
-			}
-
-			// increment the appropriate counter(s) for this show.
-			// count shows with no aired date as upcoming,
-			// unless they're specials in which case count them as aired.
-			if ((firstAired != null && firstAired.before(new Date()))
-			    || seasonNumber == 0) {
-				numAiredEpisodesMap.put(key,
-				                        numAiredEpisodesMap.get(key) + 1);
-				if (watched) {
-					numWatchedEpisodesMap.put(key,
-					                          numWatchedEpisodesMap.get(key) + 1);
-				}
-			} else {
-				numUpcomingEpisodesMap.put(key,
-				                           numUpcomingEpisodesMap.get(key) + 1);
-			}
-		} while (episodesCursor.moveToNext());
-	}
-
-	public Set<Integer> getKeys() {
-		return keys;
+		do {
+			final int key = countsCursor.getInt(keyColumnIndex);
+			numAiredEpisodesMap.put(key, countsCursor.getInt(airedColumnIndex));
+			numWatchedEpisodesMap.put(key, countsCursor.getInt(watchedColumnIndex));
+			numUpcomingEpisodesMap.put(key, countsCursor.getInt(upcomingColumnIndex));
+		} while (countsCursor.moveToNext());
 	}
 
 	public int getNumAiredEpisodes(int key) {
-		final Integer value = numAiredEpisodesMap.get(key);
-		if (value == null) {
-			return 0;
-		} else {
-			return value;
-		}
+		return numAiredEpisodesMap.get(key, 0);
 	}
 
 	public int getNumWatchedEpisodes(int key) {
-		final Integer value = numWatchedEpisodesMap.get(key);
-		if (value == null) {
-			return 0;
-		} else {
-			return value;
-		}
+		return numWatchedEpisodesMap.get(key, 0);
 	}
 
 	public int getNumUpcomingEpisodes(int key) {
-		final Integer value = numUpcomingEpisodesMap.get(key);
-		if (value == null) {
-			return 0;
-		} else {
-			return value;
-		}
+		return numUpcomingEpisodesMap.get(key, 0);
 	}
 }
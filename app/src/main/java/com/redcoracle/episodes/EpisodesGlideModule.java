@@ -0,0 +1,133 @@
+package com.redcoracle.episodes;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.load.resource.bitmap.ByteBufferBitmapDecoder;
+import com.bumptech.glide.load.resource.bitmap.Downsampler;
+import com.bumptech.glide.load.resource.bitmap.StreamBitmapDecoder;
+import com.bumptech.glide.module.AppGlideModule;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+/**
+ * Configures Glide for the app's TMDB artwork. The memory cache is sized
+ * for the banners the shows list keeps on screen and preloads, and image
+ * downloads and decodes are counted so their cost can be reported.
+ */
+@GlideModule
+public class EpisodesGlideModule extends AppGlideModule {
+    private static final AtomicLong imagesDownloaded = new AtomicLong();
+    private static final AtomicLong bytesDownloaded = new AtomicLong();
+    private static final AtomicLong imagesDecoded = new AtomicLong();
+    private static final AtomicLong decodeNanos = new AtomicLong();
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        // Glide's default is a couple of screens' worth of full screen
+        // bitmaps. Banners are much smaller than that, so only keep as many
+        // as the list needs, unless the default is smaller still.
+        final long defaultSize = new MemorySizeCalculator.Builder(context).build().getMemoryCacheSize();
+        final long bannersSize = ShowsListFragment.getBannerMemoryCacheSize(context);
+        builder.setMemoryCache(new LruResourceCache(Math.min(defaultSize, bannersSize)));
+    }
+
+    @Override
+    public void registerComponents(@NonNull Context context,
+                                   @NonNull Glide glide,
+                                   @NonNull Registry registry) {
+        // Derived from the app's shared client, so images share its
+        // connections to TMDB's image host.
+        final OkHttpClient client = EpisodesApplication.getInstance().getHttpClient().newBuilder()
+                .addNetworkInterceptor(chain -> {
+                    final Response response = chain.proceed(chain.request());
+                    final long length = response.body() != null ? response.body().contentLength() : -1;
+                    if (response.isSuccessful() && length > 0) {
+                        imagesDownloaded.incrementAndGet();
+                        bytesDownloaded.addAndGet(length);
+                    }
+                    return response;
+                })
+                .build();
+        registry.replace(GlideUrl.class, InputStream.class, new OkHttpUrlLoader.Factory(client));
+
+        // Glide's own bitmap decoders, timed. Downloaded images are decoded
+        // from a stream, and those in the disk cache from a buffer.
+        final Downsampler downsampler = new Downsampler(registry.getImageHeaderParsers(),
+                context.getResources().getDisplayMetrics(),
+                glide.getBitmapPool(),
+                glide.getArrayPool());
+        registry.prepend(Registry.BUCKET_BITMAP, InputStream.class, Bitmap.class,
+                new TimedDecoder<>(new StreamBitmapDecoder(downsampler, glide.getArrayPool())));
+        registry.prepend(Registry.BUCKET_BITMAP, ByteBuffer.class, Bitmap.class,
+                new TimedDecoder<>(new ByteBufferBitmapDecoder(downsampler)));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+
+    /**
+     * Summarises how many images have been downloaded and decoded since the
+     * app started, and how much that cost.
+     */
+    public static String getImageStats() {
+        final long decoded = imagesDecoded.get();
+        final long decodeMillis = TimeUnit.NANOSECONDS.toMillis(decodeNanos.get());
+        return String.format(Locale.ROOT,
+                "%d images downloaded (%d KiB); %d decoded in %d ms (%.1f ms each)",
+                imagesDownloaded.get(),
+                bytesDownloaded.get() / 1024,
+                decoded,
+                decodeMillis,
+                decoded > 0 ? (double)decodeMillis / decoded : 0.0);
+    }
+
+    private static class TimedDecoder<T> implements ResourceDecoder<T, Bitmap> {
+        private final ResourceDecoder<T, Bitmap> decoder;
+
+        TimedDecoder(ResourceDecoder<T, Bitmap> decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public boolean handles(@NonNull T source, @NonNull Options options) throws IOException {
+            return decoder.handles(source, options);
+        }
+
+        @Override
+        public Resource<Bitmap> decode(@NonNull T source, int width, int height, @NonNull Options options)
+                throws IOException {
+            final long start = SystemClock.elapsedRealtimeNanos();
+            try {
+                return decoder.decode(source, width, height, options);
+            } finally {
+                imagesDecoded.incrementAndGet();
+                decodeNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - start);
+            }
+        }
+    }
+}
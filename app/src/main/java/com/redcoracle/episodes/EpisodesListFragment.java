@@ -120,19 +120,11 @@ public class EpisodesListFragment
 			EpisodesTable.COLUMN_FIRST_AIRED,
 			EpisodesTable.COLUMN_WATCHED
 		};
-		final String selection = String.format("%s=? AND %s=?",
-		                                 EpisodesTable.COLUMN_SHOW_ID,
-		                                 EpisodesTable.COLUMN_SEASON_NUMBER);
-		final String[] selectionArgs = {
-			String.valueOf(showId),
-			String.valueOf(seasonNumber)
-		};
-
 		return new CursorLoader(getActivity(),
-		                        ShowsProvider.CONTENT_URI_EPISODES,
+		                        ShowsProvider.getSeasonEpisodesUri(showId, seasonNumber),
 		                        projection,
-		                        selection,
-		                        selectionArgs,
+		                        null,
+		                        null,
 		                        EpisodesTable.COLUMN_EPISODE_NUMBER + " ASC");
 	}
 
@@ -5,8 +5,9 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.provider.OpenableColumns;
 
-import java.io.IOException;
-import java.nio.channels.FileChannel;
+import com.redcoracle.episodes.db.LibraryExport;
+import com.redcoracle.episodes.db.WatchedSnapshot;
+
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -19,6 +20,19 @@ public class FileUtilities {
         return String.format("episodes_%s.db", formatter.format(today));
     }
 
+    public static String get_suggested_export_filename(boolean changes) {
+        final Date today = new Date();
+        final DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd_HHmm", Locale.getDefault());
+        return String.format("episodes_%s%s%s", formatter.format(today), changes ? "_changes" : "",
+                LibraryExport.FILE_EXTENSION);
+    }
+
+    public static String get_suggested_watched_snapshot_filename() {
+        final Date today = new Date();
+        final DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd_HHmm", Locale.getDefault());
+        return String.format("episodes_%s%s", formatter.format(today), WatchedSnapshot.FILE_EXTENSION);
+    }
+
     public static String uri_to_filename(Context context, Uri uri) {
         Cursor cursor = context.getContentResolver().query(uri, null, null, null, null);
         int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
@@ -27,14 +41,4 @@ public class FileUtilities {
         cursor.close();
         return filename;
     }
-
-    public static void copy_file(FileChannel source, FileChannel destination) {
-        try {
-            destination.transferFrom(source, 0, source.size());
-            source.close();
-            destination.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
 }
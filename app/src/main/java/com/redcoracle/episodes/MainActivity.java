@@ -39,16 +39,9 @@ import androidx.core.content.ContextCompat;
 import androidx.core.view.MenuItemCompat;
 import androidx.fragment.app.FragmentManager;
 
-import com.bumptech.glide.Glide;
-import com.redcoracle.episodes.db.DatabaseOpenHelper;
-import com.redcoracle.episodes.db.ShowsProvider;
-import com.redcoracle.episodes.services.AsyncTask;
 import com.redcoracle.episodes.services.BackupTask;
 import com.redcoracle.episodes.services.RestoreTask;
-
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import com.redcoracle.episodes.services.TaskScheduler;
 
 public class MainActivity
     extends AppCompatActivity
@@ -104,8 +97,24 @@ public class MainActivity
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		switch (item.getItemId()) {
+		case R.id.menu_up_next:
+			showUpNext();
+			return true;
+
 		case R.id.menu_back_up:
-			back_up();
+			back_up(BackupTask.Kind.DATABASE);
+			return true;
+
+		case R.id.menu_export:
+			back_up(BackupTask.Kind.EXPORT);
+			return true;
+
+		case R.id.menu_export_changes:
+			back_up(BackupTask.Kind.EXPORT_CHANGES);
+			return true;
+
+		case R.id.menu_save_watched:
+			back_up(BackupTask.Kind.WATCHED_SNAPSHOT);
 			return true;
 
 		case R.id.menu_restore:
@@ -141,18 +150,43 @@ public class MainActivity
         return ContextCompat.checkSelfPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
     }
 
-    private void back_up() {
+    private void back_up(BackupTask.Kind kind) {
+        final String filename;
+        switch (kind) {
+        case DATABASE:
+            filename = FileUtilities.get_suggested_filename();
+            break;
+        case WATCHED_SNAPSHOT:
+            filename = FileUtilities.get_suggested_watched_snapshot_filename();
+            break;
+        default:
+            filename = FileUtilities.get_suggested_export_filename(kind == BackupTask.Kind.EXPORT_CHANGES);
+            break;
+        }
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.KITKAT) {
             Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
             intent.addCategory(Intent.CATEGORY_OPENABLE);
-            intent.setType("application/x-sqlite3");
-            intent.putExtra(Intent.EXTRA_TITLE, FileUtilities.get_suggested_filename());
-            backupFilePicker.launch(intent);
+            intent.setType(kind == BackupTask.Kind.DATABASE ? "application/x-sqlite3" : "application/octet-stream");
+            intent.putExtra(Intent.EXTRA_TITLE, filename);
+            switch (kind) {
+            case DATABASE:
+                backupFilePicker.launch(intent);
+                break;
+            case EXPORT:
+                exportFilePicker.launch(intent);
+                break;
+            case EXPORT_CHANGES:
+                exportChangesFilePicker.launch(intent);
+                break;
+            case WATCHED_SNAPSHOT:
+                watchedSnapshotFilePicker.launch(intent);
+                break;
+            }
             Toast.makeText(this, this.getString(R.string.back_up_started_message), Toast.LENGTH_LONG).show();
         } else {
             // For now, keep the existing functionality on pre-API19
             if (hasStoragePermission()) {
-                new AsyncTask().executeAsync(new BackupTask(FileUtilities.get_suggested_filename()));
+                EpisodesApplication.getInstance().getTaskScheduler().submit(TaskScheduler.Priority.USER, new BackupTask(filename, kind));
             }
         }
     }
@@ -176,49 +210,39 @@ public class MainActivity
         }
     }
 
-    final ActivityResultLauncher<Intent> backupFilePicker = registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), (intent) -> {
-        try {
+    final ActivityResultLauncher<Intent> backupFilePicker = registerBackupFilePicker(BackupTask.Kind.DATABASE);
+    final ActivityResultLauncher<Intent> exportFilePicker = registerBackupFilePicker(BackupTask.Kind.EXPORT);
+    final ActivityResultLauncher<Intent> exportChangesFilePicker = registerBackupFilePicker(BackupTask.Kind.EXPORT_CHANGES);
+    final ActivityResultLauncher<Intent> watchedSnapshotFilePicker = registerBackupFilePicker(BackupTask.Kind.WATCHED_SNAPSHOT);
+
+    private ActivityResultLauncher<Intent> registerBackupFilePicker(BackupTask.Kind kind) {
+        return registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), (intent) -> {
             if (intent.getResultCode() == Activity.RESULT_OK && intent.getData() != null) {
                 final Uri uri = intent.getData().getData();
                 if (uri != null) {
-                    FileUtilities.copy_file(
-                        new FileInputStream(this.getDatabasePath(DatabaseOpenHelper.getDbName())).getChannel(),
-                        new FileOutputStream(getContentResolver().openFileDescriptor(uri, "w").getFileDescriptor()).getChannel()
-                    );
-                    Toast.makeText(
-                        this,
-                        String.format(this.getString(R.string.back_up_success_message), FileUtilities.uri_to_filename(this, uri)),
-                        Toast.LENGTH_LONG
-                    ).show();
+                    EpisodesApplication.getInstance().getTaskScheduler().submit(TaskScheduler.Priority.USER, new BackupTask(uri, kind));
                 }
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-    });
+        });
+    }
 
     final ActivityResultLauncher<Intent> restoreFilePicker = registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), (intent) -> {
-        try {
-            if (intent.getResultCode() == Activity.RESULT_OK && intent.getData() != null) {
-                final Uri uri = intent.getData().getData();
-                if (uri != null) {
-                    FileUtilities.copy_file(
-                        new FileInputStream(getContentResolver().openFileDescriptor(uri, "r").getFileDescriptor()).getChannel(),
-                        new FileOutputStream(this.getDatabasePath(DatabaseOpenHelper.getDbName())).getChannel()
-                    );
-                    ShowsProvider.reloadDatabase(this);
-                    android.os.AsyncTask.execute(() -> Glide.get(getApplicationContext()).clearDiskCache());
-                    Toast.makeText(this, this.getString(R.string.restore_success_message), Toast.LENGTH_LONG).show();
-                }
+        if (intent.getResultCode() == Activity.RESULT_OK && intent.getData() != null) {
+            final Uri uri = intent.getData().getData();
+            if (uri != null) {
+                EpisodesApplication.getInstance().getTaskScheduler().submit(TaskScheduler.Priority.USER, new RestoreTask(uri));
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
         }
     });
 
 	@Override
 	public void onBackupSelected(String backupFilename) {
-		new AsyncTask().executeAsync(new RestoreTask(backupFilename));
+		EpisodesApplication.getInstance().getTaskScheduler().submit(TaskScheduler.Priority.USER, new RestoreTask(backupFilename));
+	}
+
+	private void showUpNext() {
+		final Intent intent = new Intent(this, UpNextActivity.class);
+		startActivity(intent);
 	}
 
 	private void showSettings() {
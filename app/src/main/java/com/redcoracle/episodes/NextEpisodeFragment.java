@@ -141,26 +141,12 @@ public class NextEpisodeFragment
 			EpisodesTable.COLUMN_FIRST_AIRED,
 			EpisodesTable.COLUMN_WATCHED
 		};
-		final String selection =
-			String.format("%s=? AND %s !=0 AND (%s==0 OR %s IS NULL)",
-			              EpisodesTable.COLUMN_SHOW_ID,
-			              EpisodesTable.COLUMN_SEASON_NUMBER,
-			              EpisodesTable.COLUMN_WATCHED,
-			              EpisodesTable.COLUMN_WATCHED);
-		final String[] selectionArgs = {
-			String.valueOf(showId)
-		};
-		final String sortOrder =
-			String.format("%s ASC, %s ASC LIMIT %d",
-			              EpisodesTable.COLUMN_SEASON_NUMBER,
-			              EpisodesTable.COLUMN_EPISODE_NUMBER,
-			              1);
 		return new CursorLoader(getActivity(),
-		                        ShowsProvider.CONTENT_URI_EPISODES,
+		                        ShowsProvider.getNextEpisodeUri(showId),
 		                        projection,
-		                        selection,
-		                        selectionArgs,
-		                        sortOrder);
+		                        null,
+		                        null,
+		                        null);
 	}
 
 	@Override
@@ -17,32 +17,59 @@
 
 package com.redcoracle.episodes;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.LongSparseArray;
 import android.util.SparseArray;
 
 import com.redcoracle.episodes.db.EpisodesTable;
+import com.redcoracle.episodes.db.SeasonRefreshStateTable;
+import com.redcoracle.episodes.db.ShowRefreshStateTable;
 import com.redcoracle.episodes.db.ShowsProvider;
 import com.redcoracle.episodes.db.ShowsTable;
+import com.redcoracle.episodes.tvdb.CacheValidator;
 import com.redcoracle.episodes.tvdb.Client;
 import com.redcoracle.episodes.tvdb.Episode;
+import com.redcoracle.episodes.tvdb.RefreshState;
 import com.redcoracle.episodes.tvdb.Show;
 
-import org.apache.commons.collections4.map.MultiKeyMap;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class RefreshShowUtil {
 	private static final String TAG = RefreshShowUtil.class.getName();
 
+	// Refresh state older than this is ignored and the show fetched in full,
+	// so edits which didn't change a validator are eventually picked up.
+	private static final long MAX_REFRESH_STATE_AGE = TimeUnit.DAYS.toSeconds(30);
+
 	public static void refreshShow(int showId, ContentResolver contentResolver) {
+		final Show show = fetchShow(showId, contentResolver);
+		final int written = applyShow(showId, show, contentResolver);
+		Log.i(TAG, String.format("Refreshed show %d: %d rows written", showId, written));
+		EpisodesApplication.getInstance().getArtworkStore().sync(contentResolver,
+			Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(showId)));
+	}
+
+	// Fetches the latest show and episode details from TMDB. This is the slow,
+	// network bound half of a refresh and is safe to run on several threads.
+	public static Show fetchShow(int showId, ContentResolver contentResolver) {
 		Log.i(TAG, String.format("Refreshing show %d", showId));
 
 		final Client tmdbClient = new Client();
@@ -50,13 +77,174 @@ public class RefreshShowUtil {
 
 		final String showLanguage = preferences.getString("pref_language", "en");
 		final HashMap<String, String> showIds = getShowIds(showId, contentResolver);
-		final Show show = tmdbClient.getShow(showIds, showLanguage);
+		final RefreshState refreshState = getRefreshState(showId, showLanguage, contentResolver);
+		return tmdbClient.getShow(showIds, showLanguage, refreshState);
+	}
+
+	// Writes a show fetched by fetchShow() to the database. The show, its
+	// episodes and its refresh state are written in a single transaction,
+	// so the stored refresh state always describes the stored episodes.
+	// Returns the number of rows actually written.
+	public static int applyShow(int showId, Show show, ContentResolver contentResolver) {
+		if (show == null) {
+			return 0;
+		}
+		final RefreshState refreshState = show.getRefreshState();
+		if (refreshState != null && !refreshState.isShowModified()) {
+			// Nothing was fetched, so there's nothing to write. The refresh
+			// state is left alone too, including when it was last refreshed,
+			// so the show is still fetched in full once that's too old.
+			Log.i(TAG, String.format("Show %d is unchanged", showId));
+			return 0;
+		}
+
+		final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+		// The show may have been deleted, or the database restored, since it
+		// was fetched. Nothing references the show row, so the batch would
+		// otherwise write episodes and refresh state for a show which no
+		// longer exists, or is now a different show. The assertion fails the
+		// batch, and is checked in the same transaction as the writes.
+		final Uri showUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(showId));
+		operations.add(ContentProviderOperation.newAssertQuery(showUri)
+			.withSelection(String.format("%s IS NULL OR %s=?", ShowsTable.COLUMN_TMDB_ID, ShowsTable.COLUMN_TMDB_ID),
+				new String[] { String.valueOf(show.getTmdbId()) })
+			.withExpectedCount(1)
+			.build());
+		operations.add(updateShow(showId, show));
+		if (show.getEpisodes() != null) {
+			final Set<Integer> unchangedSeasons = refreshState != null
+				? refreshState.getUnchangedSeasons()
+				: Collections.<Integer>emptySet();
+			updateEpisodes(showId, show.getEpisodes(), unchangedSeasons, contentResolver, operations);
+		}
+		if (refreshState != null) {
+			updateRefreshState(showId, show.getLanguage(), refreshState, operations);
+		}
 
-		if (show != null) {
-			updateShow(showId, show, contentResolver);
-			if (show.getEpisodes() != null) {
-				updateEpisodes(showId, show.getEpisodes(), contentResolver);
+		int written = 0;
+		try {
+			final ContentProviderResult[] results = contentResolver.applyBatch(ShowsProvider.URI_AUTHORITY, operations);
+			// The first result is the assertion's, which wrote nothing.
+			for (int i = 1; i < results.length; i++) {
+				final ContentProviderResult result = results[i];
+				if (result.count != null) {
+					written += result.count;
+				} else if (result.uri != null && TextUtils.isDigitsOnly(result.uri.getLastPathSegment())) {
+					// An insert returns the new row's URI. A row skipped on a
+					// constraint error returns the table's URI instead, and
+					// isn't counted.
+					written += 1;
+				}
 			}
+		} catch (OperationApplicationException e) {
+			Log.w(TAG, String.format("Not updating show %d, which has been deleted or replaced: %s", showId, e.toString()));
+		} catch (RemoteException e) {
+			Log.e(TAG, String.format("Error updating show %d: %s", showId, e.toString()));
+		}
+		return written;
+	}
+
+	private static RefreshState getRefreshState(int showId, String language, ContentResolver contentResolver) {
+		final RefreshState refreshState = new RefreshState();
+		final String selection = String.format("%s=?", ShowRefreshStateTable.COLUMN_SHOW_ID);
+		final String[] selectionArgs = {
+			String.valueOf(showId)
+		};
+
+		final Cursor showCursor = contentResolver.query(
+			ShowsProvider.CONTENT_URI_SHOW_REFRESH_STATE, null, selection, selectionArgs, null);
+		try {
+			if (!showCursor.moveToFirst()) {
+				return refreshState;
+			}
+			final long lastRefreshed = showCursor.getLong(
+				showCursor.getColumnIndexOrThrow(ShowRefreshStateTable.COLUMN_LAST_REFRESHED));
+			final String stateLanguage = showCursor.getString(
+				showCursor.getColumnIndexOrThrow(ShowRefreshStateTable.COLUMN_LANGUAGE));
+			if (System.currentTimeMillis() / 1000 - lastRefreshed > MAX_REFRESH_STATE_AGE
+				|| !language.equals(stateLanguage)) {
+				return refreshState;
+			}
+
+			refreshState.setStatus(showCursor.getString(
+				showCursor.getColumnIndexOrThrow(ShowRefreshStateTable.COLUMN_STATUS)));
+			final int lastAirDateColumnIndex = showCursor.getColumnIndexOrThrow(ShowRefreshStateTable.COLUMN_LAST_AIR_DATE);
+			if (!showCursor.isNull(lastAirDateColumnIndex)) {
+				refreshState.setLastAirDate(new Date(showCursor.getLong(lastAirDateColumnIndex) * 1000));
+			}
+			refreshState.setNumberOfEpisodes(showCursor.getInt(
+				showCursor.getColumnIndexOrThrow(ShowRefreshStateTable.COLUMN_NUMBER_OF_EPISODES)));
+			refreshState.setShowValidator(getValidator(showCursor,
+				ShowRefreshStateTable.COLUMN_ETAG, ShowRefreshStateTable.COLUMN_LAST_MODIFIED));
+		} finally {
+			showCursor.close();
+		}
+
+		final Cursor seasonsCursor = contentResolver.query(
+			ShowsProvider.CONTENT_URI_SEASON_REFRESH_STATE, null, selection, selectionArgs, null);
+		final int seasonNumberColumnIndex = seasonsCursor.getColumnIndexOrThrow(SeasonRefreshStateTable.COLUMN_SEASON_NUMBER);
+		while (seasonsCursor.moveToNext()) {
+			refreshState.putSeasonValidator(seasonsCursor.getInt(seasonNumberColumnIndex), getValidator(seasonsCursor,
+				SeasonRefreshStateTable.COLUMN_ETAG, SeasonRefreshStateTable.COLUMN_LAST_MODIFIED));
+		}
+		seasonsCursor.close();
+		refreshState.markSeasonValidatorsStored();
+
+		return refreshState;
+	}
+
+	private static CacheValidator getValidator(Cursor cursor, String etagColumn, String lastModifiedColumn) {
+		final String etag = cursor.getString(cursor.getColumnIndexOrThrow(etagColumn));
+		final String lastModified = cursor.getString(cursor.getColumnIndexOrThrow(lastModifiedColumn));
+		if (etag == null && lastModified == null) {
+			return null;
+		}
+		return new CacheValidator(etag, lastModified);
+	}
+
+	private static void updateRefreshState(int showId,
+	                                       String language,
+	                                       RefreshState refreshState,
+	                                       ArrayList<ContentProviderOperation> operations) {
+		final String selection = String.format("%s=?", ShowRefreshStateTable.COLUMN_SHOW_ID);
+		final String[] selectionArgs = {
+			String.valueOf(showId)
+		};
+
+		final ContentValues showValues = new ContentValues();
+		showValues.put(ShowRefreshStateTable.COLUMN_SHOW_ID, showId);
+		showValues.put(ShowRefreshStateTable.COLUMN_LANGUAGE, language);
+		showValues.put(ShowRefreshStateTable.COLUMN_STATUS, refreshState.getStatus());
+		if (refreshState.getLastAirDate() != null) {
+			showValues.put(ShowRefreshStateTable.COLUMN_LAST_AIR_DATE, refreshState.getLastAirDate().getTime() / 1000);
+		}
+		showValues.put(ShowRefreshStateTable.COLUMN_NUMBER_OF_EPISODES, refreshState.getNumberOfEpisodes());
+		final CacheValidator showValidator = refreshState.getShowValidator();
+		if (showValidator != null) {
+			showValues.put(ShowRefreshStateTable.COLUMN_ETAG, showValidator.getEtag());
+			showValues.put(ShowRefreshStateTable.COLUMN_LAST_MODIFIED, showValidator.getLastModified());
+		}
+		showValues.put(ShowRefreshStateTable.COLUMN_LAST_REFRESHED, System.currentTimeMillis() / 1000);
+
+		operations.add(ContentProviderOperation.newDelete(ShowsProvider.CONTENT_URI_SHOW_REFRESH_STATE)
+			.withSelection(selection, selectionArgs).build());
+		operations.add(ContentProviderOperation.newInsert(ShowsProvider.CONTENT_URI_SHOW_REFRESH_STATE)
+			.withValues(showValues).build());
+
+		if (!refreshState.isSeasonValidatorsChanged()) {
+			return;
+		}
+		operations.add(ContentProviderOperation.newDelete(ShowsProvider.CONTENT_URI_SEASON_REFRESH_STATE)
+			.withSelection(selection, selectionArgs).build());
+		final SparseArray<CacheValidator> seasonValidators = refreshState.getSeasonValidators();
+		for (int i = 0; i < seasonValidators.size(); i++) {
+			final ContentValues seasonValues = new ContentValues();
+			seasonValues.put(SeasonRefreshStateTable.COLUMN_SHOW_ID, showId);
+			seasonValues.put(SeasonRefreshStateTable.COLUMN_SEASON_NUMBER, seasonValidators.keyAt(i));
+			seasonValues.put(SeasonRefreshStateTable.COLUMN_ETAG, seasonValidators.valueAt(i).getEtag());
+			seasonValues.put(SeasonRefreshStateTable.COLUMN_LAST_MODIFIED, seasonValidators.valueAt(i).getLastModified());
+			operations.add(ContentProviderOperation.newInsert(ShowsProvider.CONTENT_URI_SEASON_REFRESH_STATE)
+				.withValues(seasonValues).build());
 		}
 	}
 
@@ -81,7 +269,7 @@ public class RefreshShowUtil {
 		return showIds;
 	}
 
-	private static void updateShow(int showId, Show show, ContentResolver contentResolver) {
+	private static ContentProviderOperation updateShow(int showId, Show show) {
 		final ContentValues showValues = new ContentValues();
 		if (show.getTvdbId() != 0) {
 			showValues.put(ShowsTable.COLUMN_TVDB_ID, show.getTvdbId());
@@ -97,111 +285,241 @@ public class RefreshShowUtil {
 		showValues.put(ShowsTable.COLUMN_BANNER_PATH, show.getBannerPath());
 		showValues.put(ShowsTable.COLUMN_FANART_PATH, show.getFanartPath());
 		showValues.put(ShowsTable.COLUMN_POSTER_PATH, show.getPosterPath());
+		final long contentHash = show.contentHash();
+		showValues.put(ShowsTable.COLUMN_CONTENT_HASH, contentHash);
 
 		final Uri showUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(showId));
-		contentResolver.update(showUri, showValues, null, null);
+		// Only matches if the show has changed since it was last written.
+		final String selection = String.format("%s IS NOT ?", ShowsTable.COLUMN_CONTENT_HASH);
+		final String[] selectionArgs = {
+			String.valueOf(contentHash)
+		};
+		return ContentProviderOperation.newUpdate(showUri)
+			.withValues(showValues)
+			.withSelection(selection, selectionArgs)
+			.build();
 	}
 
-	private static void updateEpisodes(int showId, List<Episode> episodes, ContentResolver contentResolver) {
-		// TODO: likely performance gains to be had in here
-		final MultiKeyMap seasonPairMap = new MultiKeyMap();
-		final HashSet<String> seen = new HashSet<>();
-		final SparseArray<Episode> episodeMap = new SparseArray<>();
-		final ArrayList<ContentValues> updates = new ArrayList<>();
+	private static void updateEpisodes(int showId,
+	                                   List<Episode> episodes,
+	                                   Set<Integer> unchangedSeasons,
+	                                   ContentResolver contentResolver,
+	                                   ArrayList<ContentProviderOperation> operations) {
+		// Stored episodes are matched to fetched ones by merging both in TMDB
+		// ID order. Rows left over are then matched by season and episode
+		// number, which should only be needed for shows migrated from TVDB.
+		final Episode[] fetched = episodes.toArray(new Episode[0]);
+		Arrays.sort(fetched, new Comparator<Episode>() {
+			@Override
+			public int compare(Episode a, Episode b) {
+				return Integer.compare(a.getTmdbId(), b.getTmdbId());
+			}
+		});
+		final boolean[] matched = new boolean[fetched.length];
 
-		for (Episode episode : episodes) {
-			episodeMap.append(episode.getTmdbId(), episode);
-			seasonPairMap.put(episode.getSeasonNumber(), episode.getEpisodeNumber(), episode);
-		}
+		final ArrayList<ContentProviderOperation> deletes = new ArrayList<>();
+		final ArrayList<ContentProviderOperation> updates = new ArrayList<>();
+		final ArrayList<ContentProviderOperation> inserts = new ArrayList<>();
 
 		final Cursor cursor = getEpisodesCursor(showId, contentResolver);
+		final int idColumnIndex = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_ID);
+		final int tmdbIdColumnIndex = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_TMDB_ID);
+		final int seasonNumberColumnIndex = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SEASON_NUMBER);
+		final int episodeNumberColumnIndex = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_EPISODE_NUMBER);
+		final EpisodeColumns columns = new EpisodeColumns(cursor);
 
+		int[] unmatchedRows = new int[16];
+		int numUnmatchedRows = 0;
+		int next = 0;
 		while (cursor.moveToNext()) {
-			final int idColumnIndex = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_ID);
+			// Seasons which weren't refetched have nothing to compare against.
+			if (unchangedSeasons.contains(cursor.getInt(seasonNumberColumnIndex))) {
+				continue;
+			}
+
 			final int episodeId = cursor.getInt(idColumnIndex);
-			final int tmdbColumnIndex = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_TMDB_ID);
-			final int episodeTmdbId = cursor.getInt(tmdbColumnIndex);
-
-			Episode episode = episodeMap.get(episodeTmdbId);
-			final Uri episodeUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_EPISODES, String.valueOf(episodeId));
-
-			if (episode == null) {
-				// Unable to find episode by ID; try season/episode pair instead.
-				// I think this should only happen when a show needs to migrate from TVDB->TMDB
-				episode = (Episode) seasonPairMap.get(
-					cursor.getInt(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SEASON_NUMBER)),
-					cursor.getInt(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_EPISODE_NUMBER))
-				);
-				if (episode != null) {
-					Log.d(TAG, String.format("Matched by season/episode number: %s", episodeId));
-					if (seen.contains(episode.identifier())) {
-						// Already matched a different episode by season/episode pair,
-						// so this will fail on insert and should be deleted instead.
-						Log.d(TAG, String.format("Deleting duplicate episode %s (%s)",episode.identifier(), episodeId));
-						contentResolver.delete(episodeUri, null, null);
+			if (!cursor.isNull(tmdbIdColumnIndex)) {
+				final int tmdbId = cursor.getInt(tmdbIdColumnIndex);
+				while (next < fetched.length && fetched[next].getTmdbId() < tmdbId) {
+					next++;
+				}
+				if (next < fetched.length && fetched[next].getTmdbId() == tmdbId && !matched[next]) {
+					matched[next] = true;
+					final Episode episode = fetched[next];
+					final long contentHash = episode.contentHash();
+					final Uri episodeUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_EPISODES, String.valueOf(episodeId));
+					if (!cursor.isNull(columns.contentHash)) {
+						if (cursor.getLong(columns.contentHash) != contentHash) {
+							Log.i(TAG, String.format("Updating episode %d.", episodeId));
+							updates.add(ContentProviderOperation.newUpdate(episodeUri)
+								.withValues(episodeUpdateValues(showId, episode)).build());
+						}
+					} else if (episodeChanged(cursor, columns, episode)) {
+						Log.i(TAG, String.format("Updating episode %d.", episodeId));
+						updates.add(ContentProviderOperation.newUpdate(episodeUri)
+							.withValues(episodeUpdateValues(showId, episode)).build());
 					} else {
-						seen.add(episode.identifier());
-						episodes.remove(episode);
-						continue;
+						// Written before hashes were stored but otherwise up
+						// to date, so only the hash needs filling in.
+						final ContentValues hashValues = new ContentValues();
+						hashValues.put(EpisodesTable.COLUMN_CONTENT_HASH, contentHash);
+						updates.add(ContentProviderOperation.newUpdate(episodeUri)
+							.withValues(hashValues).build());
 					}
+					continue;
 				}
-			} else if (seen.contains(episode.identifier())) {
-				Log.d(TAG, String.format("Deleting previously seen episode %s (%s)", episode.identifier(), episode.getId()));
-				contentResolver.delete(episodeUri, null, null);
-				continue;
-			} else {
-				Log.d(TAG, String.format("Found match by TMDB ID: %s", episodeId));
-				seen.add(episode.identifier());
 			}
 
-			if (episode == null) {
-				Log.i(TAG, String.format("No matches found. Deleting episode: %d", episodeId));
-				contentResolver.delete(episodeUri, null, null);
-			} else {
-				final ContentValues epValues = new ContentValues();
-				epValues.put(EpisodesTable.COLUMN_ID, episodeId);
-				epValues.put(EpisodesTable.COLUMN_SHOW_ID, showId);
-				epValues.put(EpisodesTable.COLUMN_TVDB_ID, episode.getTvdbId());
-				epValues.put(EpisodesTable.COLUMN_TMDB_ID, episode.getTmdbId());
-				epValues.put(EpisodesTable.COLUMN_IMDB_ID, episode.getImdbId());
-				epValues.put(EpisodesTable.COLUMN_NAME, episode.getName());
-				epValues.put(EpisodesTable.COLUMN_LANGUAGE, episode.getLanguage());
-				epValues.put(EpisodesTable.COLUMN_OVERVIEW, episode.getOverview());
-				epValues.put(EpisodesTable.COLUMN_EPISODE_NUMBER, episode.getEpisodeNumber());
-				epValues.put(EpisodesTable.COLUMN_SEASON_NUMBER, episode.getSeasonNumber());
-				if (episode.getFirstAired() != null) {
-					epValues.put(EpisodesTable.COLUMN_FIRST_AIRED, episode.getFirstAired().getTime() / 1000);
-				}
+			if (numUnmatchedRows == unmatchedRows.length) {
+				unmatchedRows = Arrays.copyOf(unmatchedRows, numUnmatchedRows * 2);
+			}
+			unmatchedRows[numUnmatchedRows++] = cursor.getPosition();
+		}
+
+		if (numUnmatchedRows > 0) {
+			final LongSparseArray<Episode> byNumber = new LongSparseArray<>(fetched.length);
+			for (Episode episode : fetched) {
+				byNumber.put(numberKey(episode.getSeasonNumber(), episode.getEpisodeNumber()), episode);
+			}
 
-				Log.i(TAG, String.format("Updating episode %d.", episodeId));
-				updates.add(epValues);
+			for (int i = 0; i < numUnmatchedRows; i++) {
+				cursor.moveToPosition(unmatchedRows[i]);
+				final int episodeId = cursor.getInt(idColumnIndex);
+				final Episode episode = byNumber.get(numberKey(
+					cursor.getInt(seasonNumberColumnIndex), cursor.getInt(episodeNumberColumnIndex)));
+				final int index = episode != null ? indexOf(fetched, episode.getTmdbId()) : -1;
 
-				/* remove episode from list of episodes
-				 * returned by tvdb. by the end of this function
-				 * this list will only contain new episodes */
-				episodes.remove(episode);
+				if (index >= 0 && !matched[index]) {
+					Log.d(TAG, String.format("Matched by season/episode number: %s", episodeId));
+					matched[index] = true;
+				} else {
+					// Either nothing matches, or the matching episode was
+					// already claimed by another row, so this one would
+					// only be a duplicate.
+					Log.i(TAG, String.format("No matches found. Deleting episode: %d", episodeId));
+					final Uri episodeUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_EPISODES, String.valueOf(episodeId));
+					deletes.add(ContentProviderOperation.newDelete(episodeUri).build());
+				}
 			}
 		}
 		cursor.close();
-		contentResolver.bulkInsert(ShowsProvider.CONTENT_URI_EPISODES, updates.toArray(new ContentValues[0]));
-
-
-		for (Episode episode : episodes) {
-			final ContentValues epValues = new ContentValues();
-			epValues.put(EpisodesTable.COLUMN_SHOW_ID, showId);
-			epValues.put(EpisodesTable.COLUMN_TVDB_ID, episode.getTvdbId());
-			epValues.put(EpisodesTable.COLUMN_TMDB_ID, episode.getTmdbId());
-			epValues.put(EpisodesTable.COLUMN_IMDB_ID, episode.getImdbId());
-			epValues.put(EpisodesTable.COLUMN_NAME, episode.getName());
-			epValues.put(EpisodesTable.COLUMN_LANGUAGE, episode.getLanguage());
-			epValues.put(EpisodesTable.COLUMN_OVERVIEW, episode.getOverview());
-			epValues.put(EpisodesTable.COLUMN_EPISODE_NUMBER, episode.getEpisodeNumber());
-			epValues.put(EpisodesTable.COLUMN_SEASON_NUMBER, episode.getSeasonNumber());
-			if (episode.getFirstAired() != null) {
-				epValues.put(EpisodesTable.COLUMN_FIRST_AIRED, episode.getFirstAired().getTime() / 1000);
+
+		for (int i = 0; i < fetched.length; i++) {
+			if (!matched[i]) {
+				inserts.add(ContentProviderOperation.newInsert(ShowsProvider.CONTENT_URI_EPISODES)
+					.withValues(episodeValues(showId, fetched[i])).build());
+			}
+		}
+
+		// Deletes go first so inserts can't clash with rows being removed.
+		operations.addAll(deletes);
+		operations.addAll(updates);
+		operations.addAll(inserts);
+		Log.d(TAG, String.format("Show %d: %d episodes deleted, %d updated, %d inserted, %d unchanged",
+			showId, deletes.size(), updates.size(), inserts.size(),
+			fetched.length - updates.size() - inserts.size()));
+	}
+
+	private static long numberKey(int seasonNumber, int episodeNumber) {
+		return ((long)seasonNumber << 32) | (episodeNumber & 0xffffffffL);
+	}
+
+	// Binary search for a TMDB ID in episodes sorted by TMDB ID.
+	private static int indexOf(Episode[] episodes, int tmdbId) {
+		int low = 0;
+		int high = episodes.length - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int midId = episodes[mid].getTmdbId();
+			if (midId < tmdbId) {
+				low = mid + 1;
+			} else if (midId > tmdbId) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private static ContentValues episodeValues(int showId, Episode episode) {
+		final ContentValues epValues = new ContentValues();
+		epValues.put(EpisodesTable.COLUMN_SHOW_ID, showId);
+		epValues.put(EpisodesTable.COLUMN_TVDB_ID, episode.getTvdbId());
+		epValues.put(EpisodesTable.COLUMN_TMDB_ID, episode.getTmdbId());
+		epValues.put(EpisodesTable.COLUMN_IMDB_ID, episode.getImdbId());
+		epValues.put(EpisodesTable.COLUMN_NAME, episode.getName());
+		epValues.put(EpisodesTable.COLUMN_LANGUAGE, episode.getLanguage());
+		epValues.put(EpisodesTable.COLUMN_OVERVIEW, episode.getOverview());
+		epValues.put(EpisodesTable.COLUMN_EPISODE_NUMBER, episode.getEpisodeNumber());
+		epValues.put(EpisodesTable.COLUMN_SEASON_NUMBER, episode.getSeasonNumber());
+		if (episode.getFirstAired() != null) {
+			epValues.put(EpisodesTable.COLUMN_FIRST_AIRED, episode.getFirstAired().getTime() / 1000);
+		}
+		epValues.put(EpisodesTable.COLUMN_CONTENT_HASH, episode.contentHash());
+		return epValues;
+	}
+
+	// Fields TMDB leaves out are kept rather than cleared by an update, as
+	// refreshes always have.
+	private static ContentValues episodeUpdateValues(int showId, Episode episode) {
+		final ContentValues epValues = episodeValues(showId, episode);
+		for (String column : new ArrayList<>(epValues.keySet())) {
+			if (epValues.get(column) == null) {
+				epValues.remove(column);
 			}
+		}
+		return epValues;
+	}
+
+	// Whether updating the row with the episode would change it. Null values
+	// aren't written by an update, so they're ignored here too.
+	private static boolean episodeChanged(Cursor cursor, EpisodeColumns columns, Episode episode) {
+		return differs(cursor, columns.tvdbId, episode.getTvdbId())
+			|| differs(cursor, columns.imdbId, episode.getImdbId())
+			|| differs(cursor, columns.name, episode.getName())
+			|| differs(cursor, columns.language, episode.getLanguage())
+			|| differs(cursor, columns.overview, episode.getOverview())
+			|| differs(cursor, columns.episodeNumber, (long)episode.getEpisodeNumber())
+			|| differs(cursor, columns.seasonNumber, (long)episode.getSeasonNumber())
+			|| (episode.getFirstAired() != null
+				&& differs(cursor, columns.firstAired, episode.getFirstAired().getTime() / 1000));
+	}
+
+	private static boolean differs(Cursor cursor, int columnIndex, String value) {
+		return value != null && !value.equals(cursor.getString(columnIndex));
+	}
+
+	private static boolean differs(Cursor cursor, int columnIndex, Integer value) {
+		return value != null && differs(cursor, columnIndex, (long)value);
+	}
+
+	private static boolean differs(Cursor cursor, int columnIndex, long value) {
+		return cursor.isNull(columnIndex) || cursor.getLong(columnIndex) != value;
+	}
+
+	// Column indexes of the episode cursor, looked up once per cursor.
+	private static class EpisodeColumns {
+		final int tvdbId;
+		final int imdbId;
+		final int name;
+		final int language;
+		final int overview;
+		final int episodeNumber;
+		final int seasonNumber;
+		final int firstAired;
+		final int contentHash;
 
-			contentResolver.insert(ShowsProvider.CONTENT_URI_EPISODES, epValues);
+		EpisodeColumns(Cursor cursor) {
+			tvdbId = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_TVDB_ID);
+			imdbId = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_IMDB_ID);
+			name = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_NAME);
+			language = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_LANGUAGE);
+			overview = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_OVERVIEW);
+			episodeNumber = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_EPISODE_NUMBER);
+			seasonNumber = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SEASON_NUMBER);
+			firstAired = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_FIRST_AIRED);
+			contentHash = cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_CONTENT_HASH);
 		}
 	}
 
@@ -211,14 +529,20 @@ public class RefreshShowUtil {
 			EpisodesTable.COLUMN_TVDB_ID,
 			EpisodesTable.COLUMN_TMDB_ID,
 			EpisodesTable.COLUMN_IMDB_ID,
+			EpisodesTable.COLUMN_NAME,
+			EpisodesTable.COLUMN_LANGUAGE,
+			EpisodesTable.COLUMN_OVERVIEW,
 			EpisodesTable.COLUMN_SEASON_NUMBER,
-			EpisodesTable.COLUMN_EPISODE_NUMBER
+			EpisodesTable.COLUMN_EPISODE_NUMBER,
+			EpisodesTable.COLUMN_FIRST_AIRED,
+			EpisodesTable.COLUMN_CONTENT_HASH
 		};
 		final String selection = String.format("%s=?", EpisodesTable.COLUMN_SHOW_ID);
 		final String[] selectionArgs = {
 			String.valueOf(showId)
 		};
+		final String sortOrder = String.format("%s ASC", EpisodesTable.COLUMN_TMDB_ID);
 
-		return contentResolver.query(ShowsProvider.CONTENT_URI_EPISODES, projection, selection, selectionArgs, null);
+		return contentResolver.query(ShowsProvider.CONTENT_URI_EPISODES, projection, selection, selectionArgs, sortOrder);
 	}
 }
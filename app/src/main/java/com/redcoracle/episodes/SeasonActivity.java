@@ -39,7 +39,6 @@ import com.redcoracle.episodes.db.EpisodesTable;
 import com.redcoracle.episodes.db.ShowsProvider;
 import com.redcoracle.episodes.db.ShowsTable;
 
-import java.util.ArrayList;
 import java.util.Date;
 
 public class SeasonActivity
@@ -165,34 +164,26 @@ public class SeasonActivity
 		final ContentValues epValues = new ContentValues();
 		final Date now = new Date();
 		epValues.put(EpisodesTable.COLUMN_WATCHED, watched);
-		String selection = String.format(
-			"%s=? AND %s=?",
-			EpisodesTable.COLUMN_SHOW_ID,
-			EpisodesTable.COLUMN_SEASON_NUMBER
-		);
-		ArrayList<String> selectionArgs = new ArrayList<String>(){
-			{
-				add(String.valueOf(showId));
-				add(String.valueOf(seasonNumber));
-			}
-		};
+		String selection = null;
+		String[] selectionArgs = null;
 
 		if (watched) {
 			// Only mark episodes that have aired.
 			selection = String.format(
-				"%s AND %s <= ? AND %s IS NOT NULL",
-				selection,
+				"%s <= ? AND %s IS NOT NULL",
 				EpisodesTable.COLUMN_FIRST_AIRED,
 				EpisodesTable.COLUMN_FIRST_AIRED
 			);
-			selectionArgs.add(String.valueOf(now.getTime() / 1000));
+			selectionArgs = new String[] {
+				String.valueOf(now.getTime() / 1000)
+			};
 		}
 
 		handler.startUpdate(0,
 		                    null,
-		                    ShowsProvider.CONTENT_URI_EPISODES,
+		                    ShowsProvider.getSeasonEpisodesUri(showId, seasonNumber),
 		                    epValues,
 		                    selection,
-		                    selectionArgs.toArray(new String[0]));
+		                    selectionArgs);
 	}
 }
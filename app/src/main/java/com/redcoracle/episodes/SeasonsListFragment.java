@@ -35,6 +35,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.redcoracle.episodes.db.EpisodesTable;
+import com.redcoracle.episodes.db.ShowProgressTable;
 import com.redcoracle.episodes.db.ShowsProvider;
 
 public class SeasonsListFragment
@@ -117,25 +118,27 @@ public class SeasonsListFragment
 
 		final String[] projection = {
 			EpisodesTable.COLUMN_SEASON_NUMBER,
-			EpisodesTable.COLUMN_FIRST_AIRED,
-			EpisodesTable.COLUMN_WATCHED,
-		};
-		final String selection = EpisodesTable.COLUMN_SHOW_ID + "=?";
-		final String[] selectionArgs = {
-			String.valueOf(showId)
+			ShowProgressTable.COLUMN_NUM_AIRED,
+			ShowProgressTable.COLUMN_NUM_WATCHED,
+			ShowProgressTable.COLUMN_NUM_UPCOMING
 		};
+		final boolean reverse = Preferences.getSharedPreferences()
+			.getBoolean("reverse_sort_order", false);
+		final String sortOrder = EpisodesTable.COLUMN_SEASON_NUMBER
+			+ (reverse ? " DESC" : " ASC");
 
+		// One row per season, already counted by the database.
 		return new CursorLoader(getActivity(),
-		                        ShowsProvider.CONTENT_URI_EPISODES,
+		                        ShowsProvider.getShowSeasonsUri(showId),
 		                        projection,
-		                        selection,
-		                        selectionArgs,
-		                        EpisodesTable.COLUMN_SEASON_NUMBER + " ASC");
+		                        null,
+		                        null,
+		                        sortOrder);
 	}
 
 	@Override
 	public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-		listAdapter.swapEpisodesCursor(data);
+		listAdapter.swapSeasonsCursor(data);
 	}
 
 	@Override
@@ -186,19 +189,31 @@ public class SeasonsListFragment
 
 		private final Context context;
 		private final OnItemClickListener onItemClickListener;
-		private EpisodesCounter episodesCounter;
+		private Cursor seasonsCursor;
+		private int seasonNumberColumnIndex;
+		private int airedColumnIndex;
+		private int watchedColumnIndex;
+		private int upcomingColumnIndex;
 
 		public SeasonsListAdapter(Context context,
 		                          OnItemClickListener onItemClickListener) {
 			this.context = context;
 			this.onItemClickListener = onItemClickListener;
-
-			episodesCounter =
-				new EpisodesCounter(EpisodesTable.COLUMN_SEASON_NUMBER);
 		}
 
-		public void swapEpisodesCursor(Cursor episodesCursor) {
-			episodesCounter.swapCursor(episodesCursor);
+		public void swapSeasonsCursor(Cursor seasonsCursor) {
+			this.seasonsCursor = seasonsCursor;
+
+			if (seasonsCursor != null) {
+				seasonNumberColumnIndex =
+					seasonsCursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SEASON_NUMBER);
+				airedColumnIndex =
+					seasonsCursor.getColumnIndexOrThrow(ShowProgressTable.COLUMN_NUM_AIRED);
+				watchedColumnIndex =
+					seasonsCursor.getColumnIndexOrThrow(ShowProgressTable.COLUMN_NUM_WATCHED);
+				upcomingColumnIndex =
+					seasonsCursor.getColumnIndexOrThrow(ShowProgressTable.COLUMN_NUM_UPCOMING);
+			}
 
 			notifyDataSetChanged();
 		}
@@ -216,9 +231,8 @@ public class SeasonsListFragment
 		public void onBindViewHolder(ViewHolder viewHolder,
 		                             final int position) {
 
-			final Integer[] array =
-				episodesCounter.getKeys().toArray(new Integer[] {});
-			final int seasonNumber = array[position];
+			seasonsCursor.moveToPosition(position);
+			final int seasonNumber = seasonsCursor.getInt(seasonNumberColumnIndex);
 
 			final String nameText;
 			if (seasonNumber == 0) {
@@ -228,12 +242,9 @@ public class SeasonsListFragment
 			}
 			viewHolder.getNameView().setText(nameText);
 
-			final int numAired =
-				episodesCounter.getNumAiredEpisodes(seasonNumber);
-			final int numWatched =
-				episodesCounter.getNumWatchedEpisodes(seasonNumber);
-			final int numUpcoming =
-				episodesCounter.getNumUpcomingEpisodes(seasonNumber);
+			final int numAired = seasonsCursor.getInt(airedColumnIndex);
+			final int numWatched = seasonsCursor.getInt(watchedColumnIndex);
+			final int numUpcoming = seasonsCursor.getInt(upcomingColumnIndex);
 
 			viewHolder.getProgressBar().setMax(numAired);
 			viewHolder.getProgressBar().setProgress(numWatched);
@@ -259,10 +270,8 @@ public class SeasonsListFragment
 
 		@Override
 		public int getItemCount() {
-			if (episodesCounter != null) {
-				final Integer[] array =
-					episodesCounter.getKeys().toArray(new Integer[] {});
-				return array.length;
+			if (seasonsCursor != null) {
+				return seasonsCursor.getCount();
 			} else {
 				return 0;
 			}
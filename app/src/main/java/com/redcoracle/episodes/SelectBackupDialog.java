@@ -26,6 +26,9 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.DialogFragment;
 
+import com.redcoracle.episodes.db.LibraryExport;
+import com.redcoracle.episodes.db.WatchedSnapshot;
+
 import java.io.File;
 import java.util.Arrays;
 
@@ -62,7 +65,9 @@ public class SelectBackupDialog extends DialogFragment {
 	}
 
 	private File[] getBackupFiles() {
-		final File[] files = new File(this.context.getExternalFilesDir(null), "episodes").listFiles();
+		final File[] files = new File(this.context.getExternalFilesDir(null), "episodes").listFiles(
+			(dir, name) -> name.endsWith(".db") || name.endsWith(LibraryExport.FILE_EXTENSION)
+				|| name.endsWith(WatchedSnapshot.FILE_EXTENSION));
 
 		if (files != null) {
 			Arrays.sort(files, (lhs, rhs) -> Long.compare(rhs.lastModified(), lhs.lastModified()));
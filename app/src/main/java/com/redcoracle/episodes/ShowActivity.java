@@ -52,9 +52,9 @@ import com.google.android.material.tabs.TabLayout;
 import com.redcoracle.episodes.db.EpisodesTable;
 import com.redcoracle.episodes.db.ShowsProvider;
 import com.redcoracle.episodes.db.ShowsTable;
-import com.redcoracle.episodes.services.AsyncTask;
 import com.redcoracle.episodes.services.DeleteShowTask;
 import com.redcoracle.episodes.services.RefreshShowTask;
+import com.redcoracle.episodes.services.TaskScheduler;
 
 public class ShowActivity
 	extends AppCompatActivity
@@ -235,15 +235,15 @@ public class ShowActivity
 
 			final int posterPathColumnIndex = data.getColumnIndexOrThrow(ShowsTable.COLUMN_POSTER_PATH);
 			final String posterPath = data.getString(posterPathColumnIndex);
-			if (posterPath != null) {
+			final Object poster = EpisodesApplication.getInstance().getArtworkStore().getPoster(posterPath);
+			if (poster != null) {
 				CircularProgressDrawable placeholder = new CircularProgressDrawable(this);
 				placeholder.setColorFilter(ContextCompat.getColor(this, R.color.accent), PorterDuff.Mode.SRC_IN);
 				placeholder.setStrokeWidth(5f);
 				placeholder.setCenterRadius(60f);
 				placeholder.start();
-				final String artUrl = String.format("https://image.tmdb.org/t/p/w1280/%s", posterPath);
 				Glide.with(this)
-					.load(artUrl)
+					.load(poster)
 					.placeholder(placeholder)
 					.diskCacheStrategy(DiskCacheStrategy.RESOURCE)
 					.into(headerImage);
@@ -324,7 +324,8 @@ public class ShowActivity
 
 
 	private void refreshShow() {
-		new AsyncTask().executeAsync(new RefreshShowTask(this.showId));
+		EpisodesApplication.getInstance().getTaskScheduler().submit(
+			TaskScheduler.Priority.USER, RefreshShowTask.key(this.showId), new RefreshShowTask(this.showId));
 	}
 
 	private void markShowWatched(boolean watched) {
@@ -334,24 +335,23 @@ public class ShowActivity
 		final ContentValues epValues = new ContentValues();
 		epValues.put(EpisodesTable.COLUMN_WATCHED, watched);
 		final String selection =
-			String.format("%s=? AND %s!=?",
-			              EpisodesTable.COLUMN_SHOW_ID,
+			String.format("%s!=?",
 			              EpisodesTable.COLUMN_SEASON_NUMBER);
 		final String[] selectionArgs = {
-			String.valueOf(showId),
 			"0"
 		};
 
 		handler.startUpdate(0,
 		                    null,
-		                    ShowsProvider.CONTENT_URI_EPISODES,
+		                    ShowsProvider.getShowEpisodesUri(showId),
 		                    epValues,
 		                    selection,
 		                    selectionArgs);
 	}
 
 	private void deleteShow() {
-		new AsyncTask().executeAsync(new DeleteShowTask(this.showId));
+		EpisodesApplication.getInstance().getTaskScheduler().submit(
+			TaskScheduler.Priority.USER, DeleteShowTask.key(this.showId), new DeleteShowTask(this.showId));
 	}
 
 	private static class PagerAdapter
@@ -26,20 +26,21 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.CompoundButton;
 import android.widget.ImageView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.ToggleButton;
@@ -47,28 +48,45 @@ import android.widget.ToggleButton;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
-import androidx.fragment.app.ListFragment;
+import androidx.fragment.app.Fragment;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.load.DecodeFormat;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
-import com.redcoracle.episodes.db.EpisodesTable;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
+import com.redcoracle.episodes.db.ShowProgressTable;
 import com.redcoracle.episodes.db.ShowsProvider;
 import com.redcoracle.episodes.db.ShowsTable;
-import com.redcoracle.episodes.services.AsyncTask;
 import com.redcoracle.episodes.services.RefreshAllShowsTask;
+import com.redcoracle.episodes.services.TaskScheduler;
+import com.redcoracle.episodes.tvdb.TmdbImages;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class ShowsListFragment
-		extends ListFragment
+		extends Fragment
 		implements LoaderManager.LoaderCallbacks<Cursor>
 {
+	private static final String TAG = ShowsListFragment.class.getName();
+
 	private static final int LOADER_ID_SHOWS = 0;
 	private static final int LOADER_ID_EPISODES = 1;
 
@@ -81,6 +99,11 @@ public class ShowsListFragment
 	private static final int SHOWS_FILTER_ARCHIVED = 3;
 	private static final int SHOWS_FILTER_UPCOMING = 4;
 
+	// Number of rows past the last visible one whose banners are loaded
+	// ahead of being scrolled into view.
+	private static final int BANNER_PRELOAD_ROWS = 4;
+
+	private RecyclerView listView;
 	private ShowsListAdapter listAdapter;
 	private Cursor showsData;
 	private Cursor episodesData;
@@ -120,7 +143,11 @@ public class ShowsListFragment
 	public View onCreateView(LayoutInflater inflater,
 							 ViewGroup container,
 							 Bundle savedInstanceState) {
-		return inflater.inflate(R.layout.shows_list_fragment, container, false);
+		final View v = inflater.inflate(R.layout.shows_list_fragment, container, false);
+
+		listView = (RecyclerView)v.findViewById(R.id.list_view);
+
+		return v;
 	}
 
 	@Override
@@ -128,14 +155,44 @@ public class ShowsListFragment
 		super.onActivityCreated(savedInstanceState);
 
 		listAdapter = new ShowsListAdapter(getActivity(),
-				null,
-				null);
-		setListAdapter(listAdapter);
+				onShowSelectedListener);
+		listView.setAdapter(listAdapter);
+		listView.setLayoutManager(new LinearLayoutManager(getActivity()));
+
+		final int bannerWidth = getBannerWidth(getActivity());
+		listView.addOnScrollListener(new RecyclerViewPreloader<>(this,
+				listAdapter,
+				new FixedPreloadSizeProvider<Object>(bannerWidth, TmdbImages.backdropHeight(bannerWidth)),
+				BANNER_PRELOAD_ROWS));
 
 		getLoaderManager().initLoader(LOADER_ID_SHOWS, null, this);
 		getLoaderManager().initLoader(LOADER_ID_EPISODES, null, this);
 	}
 
+	@Override
+	public void onStop() {
+		super.onStop();
+		Log.i(TAG, EpisodesGlideModule.getImageStats());
+	}
+
+	// Rows span the width of the screen, and so do their banners.
+	static int getBannerWidth(Context context) {
+		return context.getResources().getDisplayMetrics().widthPixels;
+	}
+
+	/**
+	 * Returns how much memory the banners on screen, plus those preloaded
+	 * below them, take up once decoded.
+	 */
+	static long getBannerMemoryCacheSize(Context context) {
+		final int width = getBannerWidth(context);
+		final int height = TmdbImages.backdropHeight(width);
+		final int visibleRows =
+				context.getResources().getDisplayMetrics().heightPixels / height + 1;
+		// banners are decoded as RGB_565, two bytes per pixel.
+		return (long)(visibleRows + BANNER_PRELOAD_ROWS) * width * height * 2;
+	}
+
 	@Override
 	public void onCreateOptionsMenu(@NonNull Menu menu, MenuInflater inflater) {
 		inflater.inflate(R.menu.shows_list_fragment, menu);
@@ -231,22 +288,19 @@ public class ShowsListFragment
 					ShowsTable.COLUMN_NAME + " COLLATE LOCALIZED ASC");
 
 		} else if (id == LOADER_ID_EPISODES) {
+			// Episode counts are aggregated per show by the provider, so this
+			// loads one row per show rather than every episode in the library.
 			final String[] projection = {
-					EpisodesTable.COLUMN_SHOW_ID,
-					EpisodesTable.COLUMN_SEASON_NUMBER,
-					EpisodesTable.COLUMN_FIRST_AIRED,
-					EpisodesTable.COLUMN_WATCHED
-			};
-			final String selection =
-					String.format("%s!=?", EpisodesTable.COLUMN_SEASON_NUMBER);
-			final String[] selectionArgs = {
-					"0"
+					ShowProgressTable.COLUMN_SHOW_ID,
+					ShowProgressTable.COLUMN_NUM_AIRED,
+					ShowProgressTable.COLUMN_NUM_WATCHED,
+					ShowProgressTable.COLUMN_NUM_UPCOMING
 			};
 			return new CursorLoader(getActivity(),
-					ShowsProvider.CONTENT_URI_EPISODES,
+					ShowsProvider.CONTENT_URI_SHOW_PROGRESS,
 					projection,
-					selection,
-					selectionArgs,
+					null,
+					null,
 					null);
 
 		} else {
@@ -276,11 +330,6 @@ public class ShowsListFragment
 		onLoadFinished(loader, null);
 	}
 
-	@Override
-	public void onListItemClick(ListView l, View v, int position, long id) {
-		onShowSelectedListener.onShowSelected((int)id);
-	}
-
 	private void checkNotificationPermission() {
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) {
 			return;
@@ -302,252 +351,476 @@ public class ShowsListFragment
 		boolean confirmed_backup = prefs.getBoolean(KEY_PREF_CONFIRMED_BACKUP, false);
 
 		if (confirmed_backup) {
-			new AsyncTask().executeAsync(new RefreshAllShowsTask());
+			EpisodesApplication.getInstance().getTaskScheduler().submit(
+				TaskScheduler.Priority.USER, RefreshAllShowsTask.KEY, new RefreshAllShowsTask());
 		} else {
 			new AlertDialog.Builder(this.requireContext())
 			.setTitle(R.string.provider_change_warning_title)
 			.setMessage(R.string.provider_change_warning_detail)
 			.setPositiveButton(R.string.provider_change_warning_confirm, (dialogInterface, i) -> {
 				prefs.edit().putBoolean(KEY_PREF_CONFIRMED_BACKUP, true).apply();
-				new AsyncTask().executeAsync(new RefreshAllShowsTask());
+				EpisodesApplication.getInstance().getTaskScheduler().submit(
+					TaskScheduler.Priority.USER, RefreshAllShowsTask.KEY, new RefreshAllShowsTask());
 			})
 			.setNegativeButton(R.string.provider_change_warning_cancel, (dialogInterface, i) -> {})
 			.show();
 		}
 	}
 
+	// The rows on display, in list order. A snapshot is never modified once
+	// built, so it can be diffed against the next one on a background
+	// thread. It holds one array per column rather than an object per show.
+	private static class Rows
+	{
+		private static final Rows EMPTY = new Rows(0);
+
+		private final int size;
+		private final int[] ids;
+		private final String[] names;
+		// what to load for each show's banner: the stored artwork if it's
+		// been downloaded, otherwise its URL. null if it has no banner.
+		private final Object[] banners;
+		private final boolean[] starred;
+		private final boolean[] archived;
+		private final int[] numAired;
+		private final int[] numWatched;
+		private final int[] numUpcoming;
+
+		public Rows(int size) {
+			this.size = size;
+			ids = new int[size];
+			names = new String[size];
+			banners = new Object[size];
+			starred = new boolean[size];
+			archived = new boolean[size];
+			numAired = new int[size];
+			numWatched = new int[size];
+			numUpcoming = new int[size];
+		}
+
+		public boolean sameShow(int i, Rows other, int j) {
+			return ids[i] == other.ids[j] &&
+					starred[i] == other.starred[j] &&
+					archived[i] == other.archived[j] &&
+					TextUtils.equals(names[i], other.names[j]) &&
+					Objects.equals(banners[i], other.banners[j]);
+		}
+
+		public boolean sameProgress(int i, Rows other, int j) {
+			return numAired[i] == other.numAired[j] &&
+					numWatched[i] == other.numWatched[j] &&
+					numUpcoming[i] == other.numUpcoming[j];
+		}
+	}
+
+	// change payload for a show whose counts changed but nothing else.
+	private static final Object PAYLOAD_PROGRESS = new Object();
+
+	private static class RowsDiff
+			extends DiffUtil.Callback
+	{
+		private final Rows oldRows;
+		private final Rows newRows;
+
+		public RowsDiff(Rows oldRows, Rows newRows) {
+			this.oldRows = oldRows;
+			this.newRows = newRows;
+		}
+
+		@Override
+		public int getOldListSize() {
+			return oldRows.size;
+		}
+
+		@Override
+		public int getNewListSize() {
+			return newRows.size;
+		}
+
+		@Override
+		public boolean areItemsTheSame(int oldPosition, int newPosition) {
+			return oldRows.ids[oldPosition] == newRows.ids[newPosition];
+		}
+
+		@Override
+		public boolean areContentsTheSame(int oldPosition, int newPosition) {
+			return oldRows.sameShow(oldPosition, newRows, newPosition) &&
+					oldRows.sameProgress(oldPosition, newRows, newPosition);
+		}
+
+		@Override
+		public Object getChangePayload(int oldPosition, int newPosition) {
+			// only the counts changed, so the row can be updated in
+			// place without rebinding its banner.
+			if (oldRows.sameShow(oldPosition, newRows, newPosition)) {
+				return PAYLOAD_PROGRESS;
+			}
+			return null;
+		}
+	}
+
+	private static class ViewHolder
+			extends RecyclerView.ViewHolder
+			implements View.OnClickListener, CompoundButton.OnCheckedChangeListener
+	{
+		private final ContentResolver contentResolver;
+		private final OnShowSelectedListener onShowSelectedListener;
+		private final TextView nameView;
+		private final ImageView bannerView;
+		private final ToggleButton starredToggle;
+		private final ToggleButton archivedToggle;
+		private final ProgressBar progressBar;
+		private final TextView watchedCountView;
+
+		// id of the show currently bound to this view.
+		private int showId;
+
+		public ViewHolder(View v,
+						  ContentResolver contentResolver,
+						  OnShowSelectedListener onShowSelectedListener) {
+			super(v);
+			this.contentResolver = contentResolver;
+			this.onShowSelectedListener = onShowSelectedListener;
+
+			nameView = v.findViewById(R.id.show_name_view);
+			bannerView = v.findViewById(R.id.banner_view);
+			starredToggle = v.findViewById(R.id.show_starred_toggle);
+			archivedToggle = v.findViewById(R.id.show_archived_toggle);
+			progressBar = v.findViewById(R.id.show_progress_bar);
+			watchedCountView = v.findViewById(R.id.watched_count_view);
+
+			v.setOnClickListener(this);
+		}
+
+		@Override
+		public void onClick(View v) {
+			onShowSelectedListener.onShowSelected(showId);
+		}
+
+		@Override
+		public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+			final String column = buttonView == starredToggle ?
+					ShowsTable.COLUMN_STARRED : ShowsTable.COLUMN_ARCHIVED;
+
+			final AsyncQueryHandler handler = new AsyncQueryHandler(contentResolver) {};
+			final ContentValues showValues = new ContentValues();
+			showValues.put(column, isChecked);
+
+			final Uri showUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(showId));
+			handler.startUpdate(0, null, showUri, showValues, null, null);
+		}
+	}
+
 	private static class ShowsListAdapter
-			extends BaseAdapter
-			implements SharedPreferences.OnSharedPreferenceChangeListener
+			extends RecyclerView.Adapter<ViewHolder>
+			implements SharedPreferences.OnSharedPreferenceChangeListener,
+			ListPreloader.PreloadModelProvider<Object>
 	{
-		private Context context;
-		private Cursor showsCursor;
+		// diffs are calculated here rather than on the main thread. they're
+		// cheap enough that one thread serves every list.
+		private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+		private final Context context;
+		private final LayoutInflater inflater;
+		private final OnShowSelectedListener onShowSelectedListener;
+		private final EpisodesCounter episodesCounter;
+		private final ArtworkStore artworkStore;
+		private final Executor mainExecutor;
+		private final int bannerWidth;
+		private final int bannerHeight;
 		private int filter;
-		private EpisodesCounter episodesCounter;
 
-		// list of shows to be displayed with current filter. maps from
-		// the show's position in the list to its position in the cursor.
-		private List<Integer> filteredShows;
+		// the columns of every show, copied out of the cursor once per
+		// cursor so that re-filtering never needs to walk the cursor.
+		// indexed by the show's position in the cursor.
+		private int numShows;
+		private int[] showIds;
+		private String[] showNames;
+		private Object[] showBanners;
+		private boolean[] showStarred;
+		private boolean[] showArchived;
+
+		// shows to be displayed with current filter. maps from the show's
+		// position in the list to its position in the cursor. only the
+		// first numFilteredShows entries are valid.
+		private int[] filteredShows;
+		private int numFilteredShows;
+
+		// the rows currently displayed, and the generation of the last
+		// snapshot submitted for diffing. a diff which finishes after a
+		// newer snapshot was submitted is dropped.
+		private Rows rows;
+		private int maxScheduledGeneration;
 
 		public ShowsListAdapter(Context context,
-								Cursor showsCursor,
-								Cursor episodesCursor) {
+								OnShowSelectedListener onShowSelectedListener) {
 			this.context = context;
+			this.onShowSelectedListener = onShowSelectedListener;
+			inflater = LayoutInflater.from(context);
+			bannerWidth = getBannerWidth(context);
+			bannerHeight = TmdbImages.backdropHeight(bannerWidth);
+			artworkStore = EpisodesApplication.getInstance().getArtworkStore();
+			mainExecutor = ContextCompat.getMainExecutor(context);
 
-			episodesCounter = new EpisodesCounter(EpisodesTable.COLUMN_SHOW_ID);
-			episodesCounter.swapCursor(episodesCursor);
+			episodesCounter = new EpisodesCounter(ShowProgressTable.COLUMN_SHOW_ID);
 
 			final SharedPreferences prefs =
 					PreferenceManager.getDefaultSharedPreferences(context);
 			prefs.registerOnSharedPreferenceChangeListener(this);
 			filter = prefs.getInt(KEY_PREF_SHOWS_FILTER, SHOWS_FILTER_ALL);
 
-			filteredShows = new ArrayList<Integer>();
+			showIds = new int[0];
+			showNames = new String[0];
+			showBanners = new Object[0];
+			showStarred = new boolean[0];
+			showArchived = new boolean[0];
+			filteredShows = new int[0];
+			rows = Rows.EMPTY;
 
-			swapShowsCursor(showsCursor);
+			setHasStableIds(true);
 		}
 
 		public void swapShowsCursor(Cursor showsCursor) {
-			this.showsCursor = showsCursor;
-
+			loadShows(showsCursor);
 			updateFilter();
-			notifyDataSetChanged();
+			submitRows();
 		}
 
 		public void swapEpisodesCursor(Cursor episodesCursor) {
-			episodesCounter.swapCursor(episodesCursor);
+			episodesCounter.swapCountsCursor(episodesCursor);
 
-			if (showsCursor != null) {
+			// only some filters depend on the counts, but every
+			// displayed show's progress may have changed.
+			if (filterUsesCounts()) {
 				updateFilter();
-				notifyDataSetChanged();
 			}
+			submitRows();
 		}
 
 		@Override
 		public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
 											  String key) {
-			if (key.equals(KEY_PREF_SHOWS_FILTER)) {
+			if (KEY_PREF_SHOWS_FILTER.equals(key)) {
 				filter = sharedPreferences.getInt(KEY_PREF_SHOWS_FILTER,
 						SHOWS_FILTER_ALL);
+				updateFilter();
+				submitRows();
+			}
+		}
+
+		private boolean filterUsesCounts() {
+			return filter == SHOWS_FILTER_UNCOMPLETED || filter == SHOWS_FILTER_UPCOMING;
+		}
 
-				if (showsCursor != null) {
-					updateFilter();
-					notifyDataSetChanged();
+		// copies the columns of every show out of the cursor, reusing the
+		// previous arrays when they are large enough.
+		private void loadShows(Cursor showsCursor) {
+			final int previousNumShows = numShows;
+			numShows = 0;
+
+			if (showsCursor != null && showsCursor.moveToFirst()) {
+				final int idColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ID);
+				final int nameColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_NAME);
+				final int starredColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_STARRED);
+				final int archivedColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ARCHIVED);
+				final int bannerPathColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_BANNER_PATH);
+
+				final int count = showsCursor.getCount();
+				if (showIds.length < count) {
+					showIds = new int[count];
+					showNames = new String[count];
+					showBanners = new Object[count];
+					showStarred = new boolean[count];
+					showArchived = new boolean[count];
+					filteredShows = new int[count];
 				}
+
+				do {
+					showIds[numShows] = showsCursor.getInt(idColumnIndex);
+					showNames[numShows] = showsCursor.getString(nameColumnIndex);
+					showBanners[numShows] = artworkStore.getBanner(
+							showsCursor.getString(bannerPathColumnIndex), bannerWidth);
+					showStarred[numShows] = showsCursor.getInt(starredColumnIndex) > 0;
+					showArchived[numShows] = showsCursor.getInt(archivedColumnIndex) > 0;
+					numShows++;
+				} while (showsCursor.moveToNext());
+			}
+
+			// don't hold on to shows which are no longer in the cursor.
+			if (previousNumShows > numShows) {
+				Arrays.fill(showNames, numShows, previousNumShows, null);
+				Arrays.fill(showBanners, numShows, previousNumShows, null);
 			}
 		}
 
 		private void updateFilter() {
-			filteredShows.clear();
+			numFilteredShows = 0;
 
-			if (showsCursor == null || !showsCursor.moveToFirst()) {
-				return;
+			for (int i = 0; i < numShows; i++) {
+				if (matchesFilter(i)) {
+					filteredShows[numFilteredShows++] = i;
+				}
 			}
+		}
+
+		private boolean matchesFilter(int i) {
+			switch (filter) {
+				case SHOWS_FILTER_STARRED:
+					return showStarred[i];
+
+				case SHOWS_FILTER_ARCHIVED:
+					return showArchived[i];
+
+				case SHOWS_FILTER_UNCOMPLETED: {
+					final int id = showIds[i];
+					return !showArchived[i] &&
+							episodesCounter.getNumWatchedEpisodes(id) < episodesCounter.getNumAiredEpisodes(id);
+				}
 
-			do {
-				switch (filter) {
-					case SHOWS_FILTER_STARRED:
-						final int starredColumnIndex =
-								showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_STARRED);
-						if (showsCursor.getInt(starredColumnIndex) > 0) {
-							filteredShows.add(showsCursor.getPosition());
-						}
-						break;
-
-					case SHOWS_FILTER_ARCHIVED:
-						final int archivedColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ARCHIVED);
-						if (showsCursor.getInt(archivedColumnIndex) > 0) {
-							filteredShows.add(showsCursor.getPosition());
-						}
-						break;
-
-					case SHOWS_FILTER_UNCOMPLETED:
-						final int idColumnIndexUncompleted = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ID);
-						final int idUncompleted = showsCursor.getInt(idColumnIndexUncompleted);
-
-						if ((episodesCounter.getNumWatchedEpisodes(idUncompleted) < episodesCounter.getNumAiredEpisodes(idUncompleted)) &&
-								showsCursor.getInt(showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ARCHIVED)) == 0)
-						{
-							filteredShows.add(showsCursor.getPosition());
-						}
-						break;
-
-					case SHOWS_FILTER_UPCOMING:
-						final int idColumnIndexUpcoming = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ID); //change to meaningful variable
-						final int idUpcoming = showsCursor.getInt(idColumnIndexUpcoming);
-
-						if((episodesCounter.getNumUpcomingEpisodes(idUpcoming) > 0) && (episodesCounter.getNumWatchedEpisodes(idUpcoming) == episodesCounter.getNumAiredEpisodes(idUpcoming)) &&
-								showsCursor.getInt(showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ARCHIVED)) == 0)
-						{
-							filteredShows.add(showsCursor.getPosition());
-						}
-						break;
-
-					default:
-						final int columnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ARCHIVED);
-						if (showsCursor.getInt(columnIndex) == 0) {
-							filteredShows.add(showsCursor.getPosition());
-						}
-						break;
+				case SHOWS_FILTER_UPCOMING: {
+					final int id = showIds[i];
+					return !showArchived[i] &&
+							episodesCounter.getNumUpcomingEpisodes(id) > 0 &&
+							episodesCounter.getNumWatchedEpisodes(id) == episodesCounter.getNumAiredEpisodes(id);
 				}
-			} while (showsCursor.moveToNext());
+
+				default:
+					return !showArchived[i];
+			}
 		}
 
+		// snapshots the filtered shows and diffs them against those on
+		// display off the main thread, so that only the rows which actually
+		// changed are rebound.
+		private void submitRows() {
+			final Rows newRows = new Rows(numFilteredShows);
+			for (int i = 0; i < numFilteredShows; i++) {
+				final int position = filteredShows[i];
+				final int id = showIds[position];
+				newRows.ids[i] = id;
+				newRows.names[i] = showNames[position];
+				newRows.banners[i] = showBanners[position];
+				newRows.starred[i] = showStarred[position];
+				newRows.archived[i] = showArchived[position];
+				newRows.numAired[i] = episodesCounter.getNumAiredEpisodes(id);
+				newRows.numWatched[i] = episodesCounter.getNumWatchedEpisodes(id);
+				newRows.numUpcoming[i] = episodesCounter.getNumUpcomingEpisodes(id);
+			}
+
+			final Rows oldRows = rows;
+			final int generation = ++maxScheduledGeneration;
+			if (oldRows.size == 0 || newRows.size == 0) {
+				// nothing to diff: every row is either inserted or removed.
+				rows = newRows;
+				notifyItemRangeRemoved(0, oldRows.size);
+				notifyItemRangeInserted(0, newRows.size);
+				return;
+			}
+
+			DIFF_EXECUTOR.execute(() -> {
+				final DiffUtil.DiffResult result =
+						DiffUtil.calculateDiff(new RowsDiff(oldRows, newRows));
+				mainExecutor.execute(() -> {
+					if (generation == maxScheduledGeneration) {
+						rows = newRows;
+						result.dispatchUpdatesTo(this);
+					}
+				});
+			});
+		}
+
+		// builds the request for a banner. rows and the preloader must
+		// request banners identically for preloaded ones to be used.
+		private RequestBuilder<Drawable> loadBanner(RequestManager requestManager, Object banner) {
+			return requestManager
+					.load(banner)
+					.diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+					.override(bannerWidth, bannerHeight)
+					.centerCrop()
+					.format(DecodeFormat.PREFER_RGB_565)
+					.placeholder(R.drawable.blank_show_banner);
+		}
+
+		/* ListPreloader.PreloadModelProvider<Object> */
+		@NonNull
 		@Override
-		public int getCount() {
-			if (showsCursor == null) {
-				return 0;
-			} else {
-				return filteredShows.size();
+		public List<Object> getPreloadItems(int position) {
+			if (position >= rows.size || rows.banners[position] == null) {
+				return Collections.emptyList();
 			}
+			return Collections.singletonList(rows.banners[position]);
 		}
 
+		@Nullable
 		@Override
-		public Object getItem(int position) {
-			return null;
+		public RequestBuilder<?> getPreloadRequestBuilder(@NonNull Object banner) {
+			return loadBanner(Glide.with(context), banner);
+		}
+
+		/* RecyclerView.Adapter<ViewHolder> */
+		@Override
+		public int getItemCount() {
+			return rows.size;
 		}
 
 		@Override
 		public long getItemId(int position) {
-			showsCursor.moveToPosition(filteredShows.get(position));
+			return rows.ids[position];
+		}
 
-			final int idColumnIndex =
-					showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ID);
-			return showsCursor.getInt(idColumnIndex);
+		@Override
+		public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+			final View v = inflater.inflate(R.layout.shows_list_item, parent, false);
+			return new ViewHolder(v, context.getContentResolver(), onShowSelectedListener);
 		}
 
 		@Override
-		public View getView(int position,
-							View convertView,
-							ViewGroup parent) {
-
-			final LayoutInflater inflater = LayoutInflater.from(context);
-			if(convertView == null) {
-				convertView = inflater.inflate(R.layout.shows_list_item,
-						parent,
-						false);
+		public void onBindViewHolder(ViewHolder holder,
+									 int position,
+									 List<Object> payloads) {
+			if (payloads.isEmpty() || payloads.contains(null)) {
+				onBindViewHolder(holder, position);
+			} else {
+				bindProgress(holder, position);
 			}
+		}
 
-			showsCursor.moveToPosition(filteredShows.get(position));
-
-			final int idColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ID);
-			final int id = showsCursor.getInt(idColumnIndex);
-
-			final ContentResolver contentResolver = context.getContentResolver();
-
-			final TextView nameView = convertView.findViewById(R.id.show_name_view);
-			final int nameColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_NAME);
-			final String name = showsCursor.getString(nameColumnIndex);
-			nameView.setText(name);
-
-			final ImageView bannerView = convertView.findViewById(R.id.banner_view);
-			final int bannerPathColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_BANNER_PATH);
-			final String bannerPath = showsCursor.getString(bannerPathColumnIndex);
+		@Override
+		public void onBindViewHolder(ViewHolder holder, int position) {
+			holder.showId = rows.ids[position];
 
-			bannerView.setImageResource(R.drawable.blank_show_banner);
-			if (bannerPath != null && !bannerPath.equals("")) {
-				final String bannerUrl = String.format("https://image.tmdb.org/t/p/w1280/%s", bannerPath);
+			holder.nameView.setText(rows.names[position]);
 
-				Glide.with(convertView)
-						.load(bannerUrl)
-						.diskCacheStrategy(DiskCacheStrategy.RESOURCE)
-						.centerCrop()
-						.placeholder(R.drawable.blank_show_banner)
-						.into(bannerView);
+			final Object banner = rows.banners[position];
+			if (banner != null) {
+				loadBanner(Glide.with(holder.itemView), banner)
+						.into(holder.bannerView);
+			} else {
+				Glide.with(holder.itemView).clear(holder.bannerView);
+				holder.bannerView.setImageResource(R.drawable.blank_show_banner);
 			}
 
-			final ToggleButton starredToggle = (ToggleButton)convertView.findViewById(R.id.show_starred_toggle);
-			final int starredColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_STARRED);
-			final boolean starred = showsCursor.getInt(starredColumnIndex) > 0;
-
-			starredToggle.setOnCheckedChangeListener(null);
-			starredToggle.setChecked(starred);
-
-			starredToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-				public void onCheckedChanged(CompoundButton buttonView,
-											 boolean isChecked) {
-					final AsyncQueryHandler handler = new AsyncQueryHandler(contentResolver) {};
-					final ContentValues showValues = new ContentValues();
-					showValues.put(ShowsTable.COLUMN_STARRED, isChecked);
-
-					final Uri showUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(id));
-					handler.startUpdate(0,
-							null,
-							showUri,
-							showValues,
-							null,
-							null);
-				}
-			});
-
-			final ToggleButton archivedToggle = (ToggleButton)convertView.findViewById(R.id.show_archived_toggle);
-			final int archivedColumnIndex = showsCursor.getColumnIndexOrThrow(ShowsTable.COLUMN_ARCHIVED);
-			final boolean archived = showsCursor.getInt(archivedColumnIndex) > 0;
+			// the listeners read the show id from the holder, so they're
+			// detached rather than recreated while the state is bound.
+			holder.starredToggle.setOnCheckedChangeListener(null);
+			holder.starredToggle.setChecked(rows.starred[position]);
+			holder.starredToggle.setOnCheckedChangeListener(holder);
 
-			archivedToggle.setOnCheckedChangeListener(null);
-			archivedToggle.setChecked(archived);
+			holder.archivedToggle.setOnCheckedChangeListener(null);
+			holder.archivedToggle.setChecked(rows.archived[position]);
+			holder.archivedToggle.setOnCheckedChangeListener(holder);
 
-			archivedToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-				public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-					final AsyncQueryHandler handler = new AsyncQueryHandler(contentResolver) {};
-					final ContentValues showValues = new ContentValues();
-					showValues.put(ShowsTable.COLUMN_ARCHIVED, isChecked);
-					final Uri showUri = Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(id));
-					handler.startUpdate(0, null, showUri, showValues, null, null);
-				}
-			});
+			bindProgress(holder, position);
+		}
 
-			final int numAired = episodesCounter.getNumAiredEpisodes(id);
-			final int numWatched = episodesCounter.getNumWatchedEpisodes(id);
-			final int numUpcoming = episodesCounter.getNumUpcomingEpisodes(id);
+		private void bindProgress(ViewHolder holder, int position) {
+			final int numAired = rows.numAired[position];
+			final int numWatched = rows.numWatched[position];
+			final int numUpcoming = rows.numUpcoming[position];
 
-			final ProgressBar progressBar =
-					(ProgressBar)convertView.findViewById(R.id.show_progress_bar);
-			progressBar.setMax(numAired);
-			progressBar.setProgress(numWatched);
+			holder.progressBar.setMax(numAired);
+			holder.progressBar.setProgress(numWatched);
 
-			final TextView watchedCountView =
-					(TextView)convertView.findViewById(R.id.watched_count_view);
 			String watchedCountText = context.getString(R.string.watched_count,
 					numWatched,
 					numAired);
@@ -556,9 +829,7 @@ public class ShowsListFragment
 						context.getString(R.string.upcoming_count,
 								numUpcoming);
 			}
-			watchedCountView.setText(watchedCountText);
-
-			return convertView;
+			holder.watchedCountView.setText(watchedCountText);
 		}
 	}
 }
@@ -0,0 +1,52 @@
+package com.redcoracle.episodes;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.MenuItem;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.fragment.app.FragmentTransaction;
+
+public class UpNextActivity
+	extends AppCompatActivity
+	implements UpNextFragment.OnEpisodeSelectedListener
+{
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.up_next_activity);
+
+		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+		// create and add the up next fragment,
+		// but only on the first time the activity is created
+		if (savedInstanceState == null) {
+			final UpNextFragment fragment = UpNextFragment.newInstance();
+			final FragmentTransaction transaction =
+				getSupportFragmentManager().beginTransaction();
+			transaction.add(R.id.up_next_fragment_container, fragment);
+			transaction.commit();
+		}
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		switch (item.getItemId()) {
+		case android.R.id.home:
+			finish();
+			return true;
+
+		default:
+			return super.onOptionsItemSelected(item);
+		}
+	}
+
+	@Override
+	public void onEpisodeSelected(int showId, int seasonNumber, int episodeId) {
+		final Intent intent = new Intent(this, EpisodeActivity.class);
+		intent.putExtra("showId", showId);
+		intent.putExtra("seasonNumber", seasonNumber);
+		intent.putExtra("initialEpisodeId", episodeId);
+		startActivity(intent);
+	}
+}
@@ -0,0 +1,195 @@
+package com.redcoracle.episodes;
+
+import android.app.Activity;
+import android.content.AsyncQueryHandler;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.cursoradapter.widget.CursorAdapter;
+import androidx.fragment.app.ListFragment;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.CursorLoader;
+import androidx.loader.content.Loader;
+
+import com.redcoracle.episodes.db.EpisodesTable;
+import com.redcoracle.episodes.db.ShowsProvider;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+/**
+ * Lists the next episode to watch of every show in the library which has
+ * one available, all read with a single query.
+ */
+public class UpNextFragment
+	extends ListFragment
+	implements LoaderManager.LoaderCallbacks<Cursor>
+{
+	private UpNextCursorAdapter listAdapter;
+
+	public interface OnEpisodeSelectedListener {
+		public void onEpisodeSelected(int showId, int seasonNumber, int episodeId);
+	}
+	private OnEpisodeSelectedListener onEpisodeSelectedListener;
+
+	public static UpNextFragment newInstance() {
+		return new UpNextFragment();
+	}
+
+	@Override
+	public void onAttach(Activity activity) {
+		super.onAttach(activity);
+
+		try {
+			onEpisodeSelectedListener = (OnEpisodeSelectedListener)activity;
+		} catch (ClassCastException e) {
+			final String message =
+				String.format("%s must implement OnEpisodeSelectedListener",
+				              activity.toString());
+			throw new ClassCastException(message);
+		}
+	}
+
+	public View onCreateView(LayoutInflater inflater,
+	                         ViewGroup container,
+	                         Bundle savedInstanceState) {
+		return inflater.inflate(R.layout.episodes_list_fragment,
+		                        container,
+		                        false);
+	}
+
+	@Override
+	public void onActivityCreated(Bundle savedInstanceState) {
+		super.onActivityCreated(savedInstanceState);
+
+		listAdapter = new UpNextCursorAdapter(getActivity(), null, 0);
+		setListAdapter(listAdapter);
+
+		getLoaderManager().initLoader(0, null, this);
+	}
+
+	@Override
+	public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+		final String[] projection = {
+			EpisodesTable.COLUMN_ID,
+			EpisodesTable.COLUMN_SHOW_ID,
+			EpisodesTable.COLUMN_SHOW_NAME,
+			EpisodesTable.COLUMN_NAME,
+			EpisodesTable.COLUMN_SEASON_NUMBER,
+			EpisodesTable.COLUMN_EPISODE_NUMBER,
+			EpisodesTable.COLUMN_FIRST_AIRED
+		};
+
+		return new CursorLoader(getActivity(),
+		                        ShowsProvider.CONTENT_URI_UP_NEXT,
+		                        projection,
+		                        null,
+		                        null,
+		                        null);
+	}
+
+	@Override
+	public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+		listAdapter.swapCursor(data);
+	}
+
+	@Override
+	public void onLoaderReset(Loader<Cursor> loader) {
+		onLoadFinished(loader, null);
+	}
+
+	@Override
+	public void onListItemClick(ListView l, View v, int position, long id) {
+		final Cursor cursor = (Cursor)listAdapter.getItem(position);
+		final int showId =
+			cursor.getInt(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SHOW_ID));
+		final int seasonNumber =
+			cursor.getInt(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SEASON_NUMBER));
+		onEpisodeSelectedListener.onEpisodeSelected(showId, seasonNumber, (int)id);
+	}
+
+	private static class UpNextCursorAdapter
+		extends CursorAdapter
+	{
+		public UpNextCursorAdapter(Context context, Cursor c, int flags) {
+			super(context, c, flags);
+		}
+
+		@Override
+		public void bindView(View view, Context context, Cursor cursor) {
+			final int id =
+				cursor.getInt(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_ID));
+			final String showName =
+				cursor.getString(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SHOW_NAME));
+			final String name =
+				cursor.getString(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_NAME));
+			final int seasonNumber =
+				cursor.getInt(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_SEASON_NUMBER));
+			final int episodeNumber =
+				cursor.getInt(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_EPISODE_NUMBER));
+			final long firstAired =
+				cursor.getLong(cursor.getColumnIndexOrThrow(EpisodesTable.COLUMN_FIRST_AIRED));
+
+			final TextView showNameView =
+				(TextView)view.findViewById(R.id.show_name_view);
+			showNameView.setText(showName);
+
+			final TextView nameView =
+				(TextView)view.findViewById(R.id.episode_name_view);
+			nameView.setText(context.getString(R.string.up_next_episode_name,
+			                                   seasonNumber,
+			                                   episodeNumber,
+			                                   name));
+
+			// Only aired episodes are listed, so there's always a date.
+			final TextView dateView =
+				(TextView)view.findViewById(R.id.episode_date_view);
+			dateView.setText(DateFormat.getDateInstance().format(new Date(firstAired * 1000)));
+
+			final ContentResolver contentResolver = context.getContentResolver();
+			final CheckBox watchedCheckBox =
+				(CheckBox)view.findViewById(R.id.episode_watched_check_box);
+
+			// Every listed episode is unwatched. Checking one replaces it
+			// with the show's following episode once the list reloads.
+			watchedCheckBox.setOnCheckedChangeListener(null);
+			watchedCheckBox.setChecked(false);
+			watchedCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+				public void onCheckedChanged(CompoundButton buttonView,
+				                             boolean isChecked) {
+					final AsyncQueryHandler handler =
+						new AsyncQueryHandler(contentResolver) {};
+					final ContentValues epValues = new ContentValues();
+					epValues.put(EpisodesTable.COLUMN_WATCHED, isChecked);
+
+					final Uri epUri =
+						Uri.withAppendedPath(ShowsProvider.CONTENT_URI_EPISODES,
+						                     String.valueOf(id));
+					handler.startUpdate(0,
+					                    null,
+					                    epUri,
+					                    epValues,
+					                    null,
+					                    null);
+				}
+			});
+		}
+
+		@Override
+		public View newView(Context context, Cursor cursor, ViewGroup parent) {
+			final LayoutInflater inflater = LayoutInflater.from(context);
+			return inflater.inflate(R.layout.up_next_list_item, parent, false);
+		}
+	}
+}
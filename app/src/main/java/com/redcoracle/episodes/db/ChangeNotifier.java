@@ -0,0 +1,118 @@
+package com.redcoracle.episodes.db;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers ShowsProvider's change notifications. Changes requested within a
+ * short window are collected and sent together, with duplicates dropped, as
+ * are URIs whose ancestor is also being notified since observers of a URI
+ * are already told about changes to its ancestors.
+ */
+class ChangeNotifier {
+    private static final String TAG = ChangeNotifier.class.getName();
+
+    // How long changes are collected for before observers are notified.
+    private static final long COALESCE_WINDOW_MS = 50;
+
+    private final ContentResolver resolver;
+    private final Handler handler;
+    private final Set<Uri> pending = new HashSet<>();
+    private final Runnable flush = this::flush;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong emitted = new AtomicLong();
+
+    ChangeNotifier(ContentResolver resolver, Looper looper) {
+        this.resolver = resolver;
+        this.handler = new Handler(looper);
+    }
+
+    void notifyChange(Uri uri) {
+        notifyChange(Collections.singleton(uri), 1);
+    }
+
+    /**
+     * Queues notifications for uris, on behalf of the given number of
+     * individual changes which may already have been merged into them.
+     */
+    void notifyChange(Collection<Uri> uris, int changes) {
+        if (uris.isEmpty()) {
+            return;
+        }
+        requested.addAndGet(changes);
+        synchronized (pending) {
+            final boolean scheduled = !pending.isEmpty();
+            pending.addAll(uris);
+            if (!scheduled) {
+                handler.postDelayed(flush, COALESCE_WINDOW_MS);
+            }
+        }
+    }
+
+    /** The number of changes observers have been asked to be told about. */
+    long getRequestedCount() {
+        return requested.get();
+    }
+
+    /** The number of notifications actually sent. */
+    long getEmittedCount() {
+        return emitted.get();
+    }
+
+    /** The number of changes which were merged into another notification. */
+    long getCoalescedCount() {
+        return requested.get() - emitted.get();
+    }
+
+    private void flush() {
+        final List<Uri> uris;
+        synchronized (pending) {
+            uris = withoutDescendants(pending);
+            pending.clear();
+        }
+
+        for (Uri uri : uris) {
+            resolver.notifyChange(uri, null);
+        }
+        emitted.addAndGet(uris.size());
+        Log.d(TAG, String.format("sent %d notifications, %d of %d changes coalesced",
+                uris.size(), getCoalescedCount(), getRequestedCount()));
+    }
+
+    private static List<Uri> withoutDescendants(Set<Uri> uris) {
+        final List<Uri> result = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            boolean covered = false;
+            for (Uri other : uris) {
+                if (isAncestor(other, uri)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                result.add(uri);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isAncestor(Uri ancestor, Uri uri) {
+        final List<String> ancestorSegments = ancestor.getPathSegments();
+        final List<String> segments = uri.getPathSegments();
+        return ancestorSegments.size() < segments.size()
+                && ancestor.getAuthority().equals(uri.getAuthority())
+                && segments.subList(0, ancestorSegments.size()).equals(ancestorSegments);
+    }
+}
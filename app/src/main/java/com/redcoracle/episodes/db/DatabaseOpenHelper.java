@@ -18,17 +18,68 @@
 package com.redcoracle.episodes.db;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseCorruptException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
 public class DatabaseOpenHelper extends SQLiteOpenHelper {
     private static final String TAG = "DatabaseOpenHelper";
     private static final String name = "episodes.db";
-    private static final int version = 9;
+    private static final String GENERATION_NAME_FORMAT = "episodes.%d.db";
+    private static final int version = 14;
+
+    // Page cache of the primary connection, in KiB. A refresh's batches run
+    // there, and the episode indexes they update fit comfortably.
+    static final int PAGE_CACHE_KIB = 8 * 1024;
+
+    // Upper bound on how much of the database file the primary connection
+    // memory maps, in bytes.
+    static final long MMAP_SIZE = 32L * 1024 * 1024;
+
+    // The first bytes of every SQLite database file.
+    private static final byte[] SQLITE_HEADER = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+
+    // Prepared statements kept per connection. ShowsProvider binds IDs as
+    // arguments, so each distinct query shape needs only one entry.
+    static final int STATEMENT_CACHE_SIZE = SQLiteDatabase.MAX_SQL_CACHE_SIZE;
+
+    DatabaseOpenHelper(Context context, int generation) {
+        super(context, getDbName(generation), null, version);
+        // With a write ahead log, readers see the last committed state
+        // rather than waiting for a refresh's transaction to finish, and the
+        // framework pools several read connections alongside the writer.
+        setWriteAheadLoggingEnabled(true);
+    }
 
-    DatabaseOpenHelper(Context context) {
-        super(context, name, null, version);
+    // Pragmas run here only reach the primary connection, which holds every
+    // write transaction. The pooled read connections serving queries keep
+    // SQLite's defaults, as the framework offers no hook to configure them.
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Commits in WAL mode with synchronous=NORMAL only sync at checkpoints.
+        // A power loss can drop the last few commits, but never corrupts the
+        // database, and refreshes are cheap to repeat.
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        // A negative size is in KiB rather than pages.
+        db.execSQL(String.format("PRAGMA cache_size = -%d", PAGE_CACHE_KIB));
+        pragma(db, String.format("PRAGMA mmap_size = %d", MMAP_SIZE));
+        // Unlike the pragmas, this applies to every pooled connection.
+        db.setMaxSqlCacheSize(STATEMENT_CACHE_SIZE);
+        Log.d(TAG, String.format("configured primary connection: cache %d KiB, mmap %d bytes",
+                PAGE_CACHE_KIB, MMAP_SIZE));
     }
 
     @Override
@@ -36,6 +87,9 @@ public class DatabaseOpenHelper extends SQLiteOpenHelper {
         Log.d(TAG, "creating database");
         ShowsTable.onCreate(db);
         EpisodesTable.onCreate(db);
+        ShowProgressTable.onCreate(db);
+        ShowRefreshStateTable.onCreate(db);
+        SeasonRefreshStateTable.onCreate(db);
     }
 
     @Override
@@ -43,6 +97,9 @@ public class DatabaseOpenHelper extends SQLiteOpenHelper {
         Log.d(TAG, String.format("upgrading database from version %d to %d", oldVersion, newVersion));
         ShowsTable.onUpgrade(db, oldVersion, newVersion);
         EpisodesTable.onUpgrade(db, oldVersion, newVersion);
+        ShowProgressTable.onUpgrade(db, oldVersion, newVersion);
+        ShowRefreshStateTable.onUpgrade(db, oldVersion, newVersion);
+        SeasonRefreshStateTable.onUpgrade(db, oldVersion, newVersion);
     }
 
     @Override
@@ -50,7 +107,141 @@ public class DatabaseOpenHelper extends SQLiteOpenHelper {
         Log.d(TAG, "opening database.");
     }
 
-    public static String getDbName() {
-        return name;
+    /**
+     * Copies the write ahead log back into the database file and truncates
+     * it, so the database file alone holds every committed change. When
+     * optimize is true the query planner statistics are also refreshed.
+     */
+    static void checkpoint(SQLiteDatabase db, boolean optimize) {
+        // Older SQLite versions treat TRUNCATE as a passive checkpoint, and
+        // ignore the optimize pragma.
+        pragma(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+        if (optimize) {
+            pragma(db, "PRAGMA optimize");
+        }
+    }
+
+    /**
+     * Writes a consistent copy of the database, as of a single point in
+     * time, to dest, which must not already exist. Readers are never blocked,
+     * so the library stays usable while a backup is taken.
+     */
+    static void snapshot(SQLiteDatabase db, File dest) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // VACUUM INTO (SQLite 3.27) copies the database from within a
+            // read transaction, so writers carry on too, and the copy is
+            // compacted as it's written.
+            db.execSQL("VACUUM INTO ?", new Object[] {dest.getPath()});
+        } else {
+            snapshotFiles(db, dest);
+        }
+    }
+
+    // Copies the database file and its write ahead log while holding the
+    // write lock, then folds the copied log into the copied file. Only
+    // writers wait, readers carry on using the log as normal.
+    private static void snapshotFiles(SQLiteDatabase db, File dest) throws IOException {
+        final File walFile = new File(db.getPath() + "-wal");
+        final File destWalFile = new File(dest.getPath() + "-wal");
+        // No commit can happen while the lock is held. A concurrent
+        // checkpoint may still write log pages into the database file, but
+        // the log itself isn't reset until the next write, so replaying the
+        // copied log restores those pages anyway.
+        db.beginTransactionNonExclusive();
+        try {
+            copyFile(new File(db.getPath()), dest);
+            if (walFile.exists()) {
+                copyFile(walFile, destWalFile);
+            }
+        } finally {
+            db.endTransaction();
+        }
+
+        // Opening the copy replays its log, and closing the last connection
+        // checkpoints it and deletes it, leaving a single file.
+        final SQLiteDatabase copy = SQLiteDatabase.openDatabase(
+                dest.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            checkpoint(copy, false);
+        } finally {
+            copy.close();
+        }
+        destWalFile.delete();
+    }
+
+    private static void copyFile(File src, File dest) throws IOException {
+        try (FileChannel in = new FileInputStream(src).getChannel();
+             FileChannel out = new FileOutputStream(dest).getChannel()) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += out.transferFrom(in, position, size - position);
+            }
+        }
+    }
+
+    // Runs a pragma which may return a row, which execSQL refuses to do.
+    private static void pragma(SQLiteDatabase db, String sql) {
+        final Cursor cursor = db.rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Checks that file is a database written by this app, before it's
+     * opened with a helper, which would otherwise create any missing tables
+     * in whatever database it's given.
+     */
+    static void validate(File file) throws IOException {
+        final byte[] header = new byte[SQLITE_HEADER.length];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            int count;
+            while (read < header.length && (count = in.read(header, read, header.length - read)) != -1) {
+                read += count;
+            }
+        }
+        if (!Arrays.equals(header, SQLITE_HEADER)) {
+            throw new IOException(String.format("'%s' is not a database", file.getName()));
+        }
+
+        // Not read only, as that can't open a file left in WAL mode.
+        final SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            final long tables = DatabaseUtils.queryNumEntries(db, "sqlite_master", "type='table' AND name IN (?, ?)",
+                    new String[] {ShowsTable.TABLE_NAME, EpisodesTable.TABLE_NAME});
+            if (tables != 2) {
+                throw new IOException(String.format("'%s' is not an Episodes database", file.getName()));
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Runs SQLite's full integrity check, which reads every page, throwing
+     * if it finds any problem.
+     */
+    static void checkIntegrity(SQLiteDatabase db) {
+        final Cursor cursor = db.rawQuery("PRAGMA integrity_check", null);
+        try {
+            if (cursor.moveToFirst() && !"ok".equals(cursor.getString(0))) {
+                throw new SQLiteDatabaseCorruptException(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The file name of each generation of the database. A restore writes the
+     * next generation alongside the current one, rather than over it, so
+     * it can be switched to without disturbing the current one's readers.
+     */
+    static String getDbName(int generation) {
+        return generation == 0 ? name : String.format(Locale.ROOT, GENERATION_NAME_FORMAT, generation);
     }
 }
@@ -41,6 +41,24 @@ public class EpisodesTable {
     public static final String COLUMN_SEASON_NUMBER = "season_number";
     public static final String COLUMN_FIRST_AIRED = "first_aired";
     public static final String COLUMN_WATCHED = "watched";
+    public static final String COLUMN_CONTENT_HASH = "content_hash";
+
+    // Only returned by ShowsProvider.CONTENT_URI_UP_NEXT.
+    public static final String COLUMN_SHOW_NAME = "show_name";
+
+    static final String INDEX_SHOW_SEASON_EPISODE = "episodes_show_season_episode";
+    static final String INDEX_SHOW_WATCHED = "episodes_show_watched";
+    static final String INDEX_FIRST_AIRED = "episodes_first_aired";
+    static final String INDEX_SHOW_NEXT = "episodes_show_next";
+
+    // Episodes which could be a show's next episode to watch, ie. unwatched
+    // ones other than specials. The next episode index only holds these
+    // rows, so SQLite only uses it for queries including this condition.
+    static final String NEXT_CANDIDATE_CONDITION = String.format(
+            "%s!=0 AND (%s==0 OR %s IS NULL)",
+            COLUMN_SEASON_NUMBER, COLUMN_WATCHED, COLUMN_WATCHED);
+
+    static final String NOW = "CAST(strftime('%s', 'now') AS INTEGER)";
 
     public static String createTableSQL(String table_name) {
         return String.format(
@@ -56,7 +74,8 @@ public class EpisodesTable {
                 "%s INTEGER," +
                 "%s INTEGER," +
                 "%s DATE," +
-                "%s BOOLEAN" +
+                "%s BOOLEAN," +
+                "%s INTEGER" +
                 ");",
                 table_name,
                 COLUMN_ID,
@@ -70,16 +89,76 @@ public class EpisodesTable {
                 COLUMN_EPISODE_NUMBER,
                 COLUMN_SEASON_NUMBER,
                 COLUMN_FIRST_AIRED,
-                COLUMN_WATCHED
+                COLUMN_WATCHED,
+                COLUMN_CONTENT_HASH
         );
     }
 
+    static String[] createIndexesSQL() {
+        // Every screen filters episodes by show, so each index leads with
+        // show_id. The season/episode index also serves ordered season lists
+        // and next episode lookups, while first_aired serves the upcoming filter.
+        // The partial next episode index only holds unwatched episodes, so
+        // finding each show's next episode reads a single index entry.
+        return new String[] {
+                String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s, %s, %s);",
+                        INDEX_SHOW_SEASON_EPISODE, TABLE_NAME,
+                        COLUMN_SHOW_ID, COLUMN_SEASON_NUMBER, COLUMN_EPISODE_NUMBER),
+                String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s, %s);",
+                        INDEX_SHOW_WATCHED, TABLE_NAME,
+                        COLUMN_SHOW_ID, COLUMN_WATCHED),
+                String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s);",
+                        INDEX_FIRST_AIRED, TABLE_NAME,
+                        COLUMN_FIRST_AIRED),
+                String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s, %s, %s) WHERE %s;",
+                        INDEX_SHOW_NEXT, TABLE_NAME,
+                        COLUMN_SHOW_ID, COLUMN_SEASON_NUMBER, COLUMN_EPISODE_NUMBER,
+                        NEXT_CANDIDATE_CONDITION)
+        };
+    }
+
+    /**
+     * Builds a query returning each show's next episode to watch, if it has
+     * aired, along with the show's name. Archived shows are left out. The
+     * next episode of each show is looked up in the next episode index, so
+     * this reads one index entry per show rather than its episodes.
+     */
+    static String upNextSQL() {
+        final String next = String.format(
+                "SELECT %s FROM %s WHERE %s = s.%s AND %s ORDER BY %s ASC, %s ASC LIMIT 1",
+                COLUMN_ID, TABLE_NAME,
+                COLUMN_SHOW_ID, ShowsTable.COLUMN_ID,
+                NEXT_CANDIDATE_CONDITION,
+                COLUMN_SEASON_NUMBER, COLUMN_EPISODE_NUMBER);
+
+        return String.format(
+                "SELECT e.%1$s AS %1$s, e.%2$s AS %2$s, s.%3$s AS %4$s, e.%5$s AS %5$s, " +
+                "e.%6$s AS %6$s, e.%7$s AS %7$s, e.%8$s AS %8$s " +
+                "FROM %9$s s JOIN %10$s e ON e.%1$s = (%11$s) " +
+                "WHERE (s.%12$s IS NULL OR s.%12$s = 0) " +
+                "AND e.%8$s IS NOT NULL AND e.%8$s < %13$s",
+                COLUMN_ID, COLUMN_SHOW_ID, ShowsTable.COLUMN_NAME, COLUMN_SHOW_NAME, COLUMN_NAME,
+                COLUMN_SEASON_NUMBER, COLUMN_EPISODE_NUMBER, COLUMN_FIRST_AIRED,
+                ShowsTable.TABLE_NAME, TABLE_NAME, next,
+                ShowsTable.COLUMN_ARCHIVED,
+                NOW);
+    }
+
     public static void onCreate(SQLiteDatabase db) {
         String create = createTableSQL(TABLE_NAME);
 
         Log.d(TAG, String.format("creating episodes table: %s", create));
 
         db.execSQL(create);
+
+        createIndexes(db);
+    }
+
+    private static void createIndexes(SQLiteDatabase db) {
+        for (String index : createIndexesSQL()) {
+            Log.d(TAG, String.format("creating episodes index: %s", index));
+            db.execSQL(index);
+        }
     }
 
     static void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
@@ -121,5 +200,28 @@ public class EpisodesTable {
                 db.endTransaction();
             }
         }
+
+        if (oldVersion < 10) {
+            // Add indexes for per-show queries
+            Log.d(TAG, "upgrading episodes table: adding indexes");
+            createIndexes(db);
+        }
+
+        if (oldVersion < 13) {
+            // Add content hash column. Tables rebuilt above already have it.
+            Cursor cursor = db.query(TABLE_NAME, null, null, null, null, null, null, "0");
+            String[] columns = cursor.getColumnNames();
+            if (!Arrays.asList(columns).contains(COLUMN_CONTENT_HASH)) {
+                Log.d(TAG, "upgrading episodes table: adding content hash column");
+                db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER", TABLE_NAME, COLUMN_CONTENT_HASH));
+            }
+            cursor.close();
+        }
+
+        if (oldVersion < 14) {
+            // Add the next episode index
+            Log.d(TAG, "upgrading episodes table: adding next episode index");
+            createIndexes(db);
+        }
     }
 }
@@ -0,0 +1,495 @@
+package com.redcoracle.episodes.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact alternative to copying the database file. An export is a gzip
+ * stream holding the shows table then the episodes table, each as its
+ * column names followed by one record per row. The indexes, progress totals
+ * and refresh state aren't exported, as they're rebuilt from these tables.
+ *
+ * An export may instead hold only the changes since a previous export,
+ * described by that export's Manifest: rows which were added or changed,
+ * and the IDs of rows which were deleted. Importing it on top of a library
+ * restored from the previous export brings it up to date.
+ */
+public class LibraryExport {
+    private static final String TAG = LibraryExport.class.getName();
+
+    public static final String FILE_EXTENSION = ".export";
+
+    private static final int MAGIC = 0x45505831; // "EPX1"
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_ROW = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_INTEGER = 1;
+    private static final byte VALUE_FLOAT = 2;
+    private static final byte VALUE_TEXT = 3;
+    private static final byte VALUE_BLOB = 4;
+
+    // Rows written per transaction when importing changes. Each commit
+    // keeps the write ahead log small, and lets other writers, eg. marking
+    // an episode watched, in between batches.
+    static final int IMPORT_BATCH_SIZE = 500;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String MANIFEST_NAME = "library_export.manifest";
+
+    private static final String ID_SELECTION = String.format("%s=?", BaseColumns._ID);
+
+    /**
+     * The state of the library as of an export, as a hash of each row. The
+     * next export only needs to include the rows whose hashes differ.
+     */
+    public static class Manifest {
+        private final long exportId;
+        private final RowHashes shows;
+        private final RowHashes episodes;
+
+        private Manifest(long exportId, RowHashes shows, RowHashes episodes) {
+            this.exportId = exportId;
+            this.shows = shows;
+            this.episodes = episodes;
+        }
+
+        public long getExportId() {
+            return exportId;
+        }
+    }
+
+    // Row IDs in ascending order, as they're read from the tables, alongside
+    // the hash of each row.
+    private static class RowHashes {
+        private long[] ids;
+        private long[] hashes;
+        private int size;
+
+        RowHashes(int capacity) {
+            ids = new long[Math.max(capacity, 16)];
+            hashes = new long[ids.length];
+        }
+
+        void add(long id, long hash) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            ids[size] = id;
+            hashes[size] = hash;
+            size += 1;
+        }
+
+        int indexOf(long id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+    }
+
+    // Exposes the buffer so that rows can be hashed and written out
+    // without copying each one.
+    private static class RowBuffer extends ByteArrayOutputStream {
+        RowBuffer() {
+            super(4096);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Returns whether the stream, which must support mark, holds an export
+     * rather than a database file. The stream is left where it was.
+     */
+    public static boolean isExport(InputStream in) throws IOException {
+        in.mark(2);
+        final int first = in.read();
+        final int second = in.read();
+        in.reset();
+        return first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    /**
+     * Writes the library to out, or only the changes since base if it isn't
+     * null, and returns the manifest for the next export to be based on.
+     * Writers are held back, so that both tables are exported as of the
+     * same moment, but readers aren't.
+     */
+    static Manifest write(SQLiteDatabase db, OutputStream out, Manifest base) throws IOException {
+        final long exportId = System.currentTimeMillis();
+        final GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(exportId);
+        data.writeLong(base != null ? base.exportId : 0);
+
+        final RowHashes shows;
+        final RowHashes episodes;
+        db.beginTransactionNonExclusive();
+        try {
+            shows = writeTable(db, ShowsTable.TABLE_NAME, data, base != null ? base.shows : null);
+            episodes = writeTable(db, EpisodesTable.TABLE_NAME, data, base != null ? base.episodes : null);
+        } finally {
+            db.endTransaction();
+        }
+        data.flush();
+        gzip.finish();
+        return new Manifest(exportId, shows, episodes);
+    }
+
+    /**
+     * Applies an export to the library. A full export replaces the library,
+     * while one holding only changes must be based on the export described
+     * by current, and is applied in batched transactions. Returns the
+     * manifest for the next export to be based on.
+     */
+    static Manifest read(SQLiteDatabase db, InputStream in, Manifest current) throws IOException {
+        final DataInputStream data = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a library export");
+        }
+        final int version = data.readInt();
+        if (version > VERSION) {
+            throw new IOException(String.format("Unsupported library export version %d", version));
+        }
+        final long exportId = data.readLong();
+        final long baseId = data.readLong();
+        final boolean full = baseId == 0;
+        if (!full && (current == null || current.exportId != baseId)) {
+            throw new IOException(String.format(
+                    "Export %d only holds the changes since export %d, which isn't the last one imported",
+                    exportId, baseId));
+        }
+
+        // A full import is a single transaction, so a truncated or corrupt
+        // export leaves the library as it was. An interrupted import of
+        // changes leaves some batches applied, but as it only writes whole
+        // rows and the manifest isn't updated, importing the same file
+        // again completes it.
+        int rows = 0;
+        db.beginTransaction();
+        try {
+            if (full) {
+                db.delete(EpisodesTable.TABLE_NAME, null, null);
+                db.delete(ShowsTable.TABLE_NAME, null, null);
+            }
+            rows += readTable(db, ShowsTable.TABLE_NAME, data, full);
+            rows += readTable(db, EpisodesTable.TABLE_NAME, data, full);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, String.format("imported %s export %d: %d rows", full ? "full" : "partial", exportId, rows));
+
+        return scan(db, exportId);
+    }
+
+    // Hashes the library as it is now, as though it had just been exported
+    // with the given ID.
+    private static Manifest scan(SQLiteDatabase db, long exportId) throws IOException {
+        db.beginTransactionNonExclusive();
+        try {
+            return new Manifest(exportId,
+                    writeTable(db, ShowsTable.TABLE_NAME, null, null),
+                    writeTable(db, EpisodesTable.TABLE_NAME, null, null));
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Writes the IDs of rows in base which no longer exist, followed by
+    // every row of table which differs from base. Returns the hashes of
+    // every row. When out is null rows are only hashed.
+    private static RowHashes writeTable(SQLiteDatabase db, String table, DataOutputStream out, RowHashes base)
+            throws IOException {
+        final Cursor cursor = db.rawQuery(
+                String.format("SELECT * FROM %s ORDER BY %s", table, BaseColumns._ID), null);
+        try {
+            final String[] columns = cursor.getColumnNames();
+            final int idColumnIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+            if (out != null) {
+                out.writeInt(columns.length);
+                for (String column : columns) {
+                    out.writeUTF(column);
+                }
+            }
+
+            // Deletes go first. A show deleted and added again has a new ID
+            // but the same TMDB ID, as do its episodes, so importing the new
+            // rows before the old ones are deleted would break the unique
+            // constraints.
+            final int deleted = out != null && base != null ? writeDeletes(db, table, out, base) : 0;
+
+            final RowHashes hashes = new RowHashes(cursor.getCount());
+            final RowBuffer row = new RowBuffer();
+            final DataOutputStream rowData = new DataOutputStream(row);
+            int written = 0;
+            while (cursor.moveToNext()) {
+                row.reset();
+                for (int i = 0; i < columns.length; i++) {
+                    writeValue(rowData, cursor, i);
+                }
+                final long id = cursor.getLong(idColumnIndex);
+                final long hash = hash(row.buffer(), row.size());
+                hashes.add(id, hash);
+
+                final int baseIndex = base != null ? base.indexOf(id) : -1;
+                if (out != null && (baseIndex < 0 || base.hashes[baseIndex] != hash)) {
+                    out.writeByte(RECORD_ROW);
+                    out.write(row.buffer(), 0, row.size());
+                    written += 1;
+                }
+            }
+
+            if (out != null) {
+                out.writeByte(RECORD_END);
+                Log.d(TAG, String.format("exported %s: %d of %d rows, %d deleted",
+                        table, written, hashes.size, deleted));
+            }
+            return hashes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Writes a delete record for each row in base which is no longer in
+    // table, and returns how many there were.
+    private static int writeDeletes(SQLiteDatabase db, String table, DataOutputStream out, RowHashes base)
+            throws IOException {
+        final Cursor cursor = db.rawQuery(
+                String.format("SELECT %1$s FROM %2$s ORDER BY %1$s", BaseColumns._ID, table), null);
+        try {
+            // Both are in ascending order of ID, so they're walked together.
+            int deleted = 0;
+            boolean more = cursor.moveToNext();
+            for (int i = 0; i < base.size; i++) {
+                final long id = base.ids[i];
+                while (more && cursor.getLong(0) < id) {
+                    more = cursor.moveToNext();
+                }
+                if (!more || cursor.getLong(0) != id) {
+                    out.writeByte(RECORD_DELETE);
+                    out.writeLong(id);
+                    deleted += 1;
+                }
+            }
+            return deleted;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int readTable(SQLiteDatabase db, String table, DataInputStream in, boolean full)
+            throws IOException {
+        // Columns the export has but this version of the table doesn't are
+        // read and dropped, and any this version has but the export doesn't
+        // take their defaults.
+        final Set<String> existing = new HashSet<>();
+        final Cursor cursor = db.rawQuery(String.format("SELECT * FROM %s LIMIT 0", table), null);
+        try {
+            existing.addAll(Arrays.asList(cursor.getColumnNames()));
+        } finally {
+            cursor.close();
+        }
+        final String[] columns = new String[in.readInt()];
+        for (int i = 0; i < columns.length; i++) {
+            final String column = in.readUTF();
+            columns[i] = existing.contains(column) ? column : null;
+        }
+
+        final ContentValues values = new ContentValues(columns.length);
+        int rows = 0;
+        byte record;
+        while ((record = in.readByte()) != RECORD_END) {
+            if (record == RECORD_ROW) {
+                values.clear();
+                for (String column : columns) {
+                    readValue(in, values, column);
+                }
+                final Long id = values.getAsLong(BaseColumns._ID);
+                if (id == null) {
+                    throw new IOException(String.format("Exported %s row has no ID", table));
+                }
+                // Updating in place, rather than replacing the row, keeps the
+                // show progress triggers' totals right.
+                if (full || db.update(table, values, ID_SELECTION, new String[] {id.toString()}) == 0) {
+                    db.insertOrThrow(table, null, values);
+                }
+            } else if (record == RECORD_DELETE) {
+                final String[] args = {String.valueOf(in.readLong())};
+                if (ShowsTable.TABLE_NAME.equals(table)) {
+                    db.delete(EpisodesTable.TABLE_NAME, String.format("%s=?", EpisodesTable.COLUMN_SHOW_ID), args);
+                }
+                db.delete(table, ID_SELECTION, args);
+            } else {
+                throw new IOException(String.format("Unknown export record type %d", record));
+            }
+
+            rows += 1;
+            if (!full && rows % IMPORT_BATCH_SIZE == 0) {
+                db.setTransactionSuccessful();
+                db.endTransaction();
+                db.beginTransaction();
+            }
+        }
+        return rows;
+    }
+
+    private static void writeValue(DataOutputStream out, Cursor cursor, int column) throws IOException {
+        switch (cursor.getType(column)) {
+        case Cursor.FIELD_TYPE_NULL:
+            out.writeByte(VALUE_NULL);
+            break;
+        case Cursor.FIELD_TYPE_INTEGER:
+            out.writeByte(VALUE_INTEGER);
+            out.writeLong(cursor.getLong(column));
+            break;
+        case Cursor.FIELD_TYPE_FLOAT:
+            out.writeByte(VALUE_FLOAT);
+            out.writeDouble(cursor.getDouble(column));
+            break;
+        case Cursor.FIELD_TYPE_STRING:
+            // Not writeUTF, which is limited to 64 KiB.
+            final byte[] text = cursor.getString(column).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(VALUE_TEXT);
+            out.writeInt(text.length);
+            out.write(text);
+            break;
+        default:
+            final byte[] blob = cursor.getBlob(column);
+            out.writeByte(VALUE_BLOB);
+            out.writeInt(blob.length);
+            out.write(blob);
+            break;
+        }
+    }
+
+    // Reads a single value, and stores it in values unless column is null.
+    private static void readValue(DataInputStream in, ContentValues values, String column) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+        case VALUE_NULL:
+            if (column != null) {
+                values.putNull(column);
+            }
+            break;
+        case VALUE_INTEGER:
+            final long integer = in.readLong();
+            if (column != null) {
+                values.put(column, integer);
+            }
+            break;
+        case VALUE_FLOAT:
+            final double real = in.readDouble();
+            if (column != null) {
+                values.put(column, real);
+            }
+            break;
+        case VALUE_TEXT:
+        case VALUE_BLOB:
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            if (column != null) {
+                if (type == VALUE_TEXT) {
+                    values.put(column, new String(bytes, StandardCharsets.UTF_8));
+                } else {
+                    values.put(column, bytes);
+                }
+            }
+            break;
+        default:
+            throw new IOException(String.format("Unknown export value type %d", type));
+        }
+    }
+
+    // 64 bit FNV-1a.
+    private static long hash(byte[] bytes, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the manifest of the last export made or imported, or null if
+     * there hasn't been one.
+     */
+    public static Manifest loadManifest(Context context) {
+        final File file = new File(context.getFilesDir(), MANIFEST_NAME);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            final long exportId = in.readLong();
+            return new Manifest(exportId, readHashes(in), readHashes(in));
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading export manifest", e);
+            return null;
+        }
+    }
+
+    public static void saveManifest(Context context, Manifest manifest) throws IOException {
+        final File file = new File(context.getFilesDir(), MANIFEST_NAME);
+        final File temp = new File(context.getFilesDir(), MANIFEST_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(manifest.exportId);
+            writeHashes(out, manifest.shows);
+            writeHashes(out, manifest.episodes);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException(String.format("Error saving export manifest '%s'", file.getPath()));
+        }
+    }
+
+    private static RowHashes readHashes(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final RowHashes hashes = new RowHashes(size);
+        for (int i = 0; i < size; i++) {
+            hashes.add(in.readLong(), in.readLong());
+        }
+        return hashes;
+    }
+
+    private static void writeHashes(DataOutputStream out, RowHashes hashes) throws IOException {
+        out.writeInt(hashes.size);
+        for (int i = 0; i < hashes.size; i++) {
+            out.writeLong(hashes.ids[i]);
+            out.writeLong(hashes.hashes[i]);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.redcoracle.episodes.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+public class SeasonRefreshStateTable {
+    private static final String TAG = SeasonRefreshStateTable.class.getName();
+
+    public static final String TABLE_NAME = "season_refresh_state";
+
+    public static final String COLUMN_SHOW_ID = "show_id";
+    public static final String COLUMN_SEASON_NUMBER = "season_number";
+    public static final String COLUMN_ETAG = "etag";
+    public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+    private static final String TRIGGER_SHOW_DELETE = "season_refresh_state_show_delete";
+
+    public static String createTableSQL(String table_name) {
+        return String.format(
+                "CREATE TABLE %s (" +
+                "%s INTEGER NOT NULL," +
+                "%s INTEGER NOT NULL," +
+                "%s TEXT," +
+                "%s TEXT," +
+                "PRIMARY KEY (%s, %s)" +
+                ");",
+                table_name,
+                COLUMN_SHOW_ID,
+                COLUMN_SEASON_NUMBER,
+                COLUMN_ETAG,
+                COLUMN_LAST_MODIFIED,
+                COLUMN_SHOW_ID, COLUMN_SEASON_NUMBER
+        );
+    }
+
+    public static void onCreate(SQLiteDatabase db) {
+        String create = createTableSQL(TABLE_NAME);
+        Log.d(TAG, String.format("creating season refresh state table: %s", create));
+        db.execSQL(create);
+
+        db.execSQL(String.format(
+                "CREATE TRIGGER IF NOT EXISTS %s AFTER DELETE ON %s BEGIN DELETE FROM %s WHERE %s = OLD.%s; END;",
+                TRIGGER_SHOW_DELETE, ShowsTable.TABLE_NAME,
+                TABLE_NAME, COLUMN_SHOW_ID, ShowsTable.COLUMN_ID));
+    }
+
+    static void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 12) {
+            // Add season refresh state table
+            Log.d(TAG, "upgrading database: adding season refresh state table");
+            onCreate(db);
+        }
+    }
+}
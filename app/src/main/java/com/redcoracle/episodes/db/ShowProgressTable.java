@@ -0,0 +1,200 @@
+package com.redcoracle.episodes.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+public class ShowProgressTable {
+    private static final String TAG = ShowProgressTable.class.getName();
+
+    static final String TABLE_NAME = "show_progress";
+
+    // Stored columns. These only hold counts that don't depend on the current
+    // time, and are kept up to date by triggers on the episodes table.
+    static final String COLUMN_TOTAL_EPISODES = "total_episodes";
+    static final String COLUMN_TOTAL_WATCHED = "total_watched";
+
+    // Columns returned by ShowsProvider.CONTENT_URI_SHOW_PROGRESS, and along
+    // with the season number by ShowsProvider.getShowSeasonsUri().
+    public static final String COLUMN_SHOW_ID = EpisodesTable.COLUMN_SHOW_ID;
+    public static final String COLUMN_NUM_AIRED = "num_aired";
+    public static final String COLUMN_NUM_WATCHED = "num_watched";
+    public static final String COLUMN_NUM_UPCOMING = "num_upcoming";
+
+    private static final String TRIGGER_EPISODE_INSERT = "show_progress_episode_insert";
+    private static final String TRIGGER_EPISODE_UPDATE = "show_progress_episode_update";
+    private static final String TRIGGER_EPISODE_DELETE = "show_progress_episode_delete";
+    private static final String TRIGGER_SHOW_DELETE = "show_progress_show_delete";
+
+    private static final String NOW = EpisodesTable.NOW;
+
+    // Episodes with no aired date count as upcoming, unless they're
+    // specials in which case they count as aired.
+    private static final String AIRED_CONDITION = String.format(
+            "((%s IS NOT NULL AND %s < %s) OR %s = 0)",
+            EpisodesTable.COLUMN_FIRST_AIRED,
+            EpisodesTable.COLUMN_FIRST_AIRED,
+            NOW,
+            EpisodesTable.COLUMN_SEASON_NUMBER);
+
+    public static String createTableSQL(String table_name) {
+        return String.format(
+                "CREATE TABLE %s (" +
+                "%s INTEGER PRIMARY KEY," +
+                "%s INTEGER NOT NULL DEFAULT 0," +
+                "%s INTEGER NOT NULL DEFAULT 0" +
+                ");",
+                table_name,
+                COLUMN_SHOW_ID,
+                COLUMN_TOTAL_EPISODES,
+                COLUMN_TOTAL_WATCHED
+        );
+    }
+
+    // Adds (op "+") or removes (op "-") a single episode row's contribution
+    // to its show's totals. Specials are excluded, as they are from the shows list.
+    private static String updateTotalsSQL(String row, String op) {
+        return String.format(
+                "UPDATE %1$s SET " +
+                "%2$s = %2$s %3$s (CASE WHEN %4$s.%5$s != 0 THEN 1 ELSE 0 END), " +
+                "%6$s = %6$s %3$s (CASE WHEN %4$s.%5$s != 0 AND %4$s.%7$s > 0 THEN 1 ELSE 0 END) " +
+                "WHERE %8$s = %4$s.%9$s;",
+                TABLE_NAME,
+                COLUMN_TOTAL_EPISODES,
+                op,
+                row,
+                EpisodesTable.COLUMN_SEASON_NUMBER,
+                COLUMN_TOTAL_WATCHED,
+                EpisodesTable.COLUMN_WATCHED,
+                COLUMN_SHOW_ID,
+                EpisodesTable.COLUMN_SHOW_ID
+        );
+    }
+
+    private static String addEpisodeSQL(String row) {
+        return String.format("INSERT OR IGNORE INTO %s (%s) VALUES (%s.%s); %s",
+                TABLE_NAME, COLUMN_SHOW_ID, row, EpisodesTable.COLUMN_SHOW_ID,
+                updateTotalsSQL(row, "+"));
+    }
+
+    private static String removeEpisodeSQL(String row) {
+        return updateTotalsSQL(row, "-");
+    }
+
+    static String[] createTriggersSQL() {
+        return new String[] {
+                String.format("CREATE TRIGGER IF NOT EXISTS %s AFTER INSERT ON %s BEGIN %s END;",
+                        TRIGGER_EPISODE_INSERT, EpisodesTable.TABLE_NAME,
+                        addEpisodeSQL("NEW")),
+                String.format("CREATE TRIGGER IF NOT EXISTS %s AFTER UPDATE OF %s, %s, %s ON %s BEGIN %s %s END;",
+                        TRIGGER_EPISODE_UPDATE,
+                        EpisodesTable.COLUMN_SHOW_ID, EpisodesTable.COLUMN_SEASON_NUMBER, EpisodesTable.COLUMN_WATCHED,
+                        EpisodesTable.TABLE_NAME,
+                        removeEpisodeSQL("OLD"), addEpisodeSQL("NEW")),
+                String.format("CREATE TRIGGER IF NOT EXISTS %s AFTER DELETE ON %s BEGIN %s END;",
+                        TRIGGER_EPISODE_DELETE, EpisodesTable.TABLE_NAME,
+                        removeEpisodeSQL("OLD")),
+                String.format("CREATE TRIGGER IF NOT EXISTS %s AFTER DELETE ON %s BEGIN DELETE FROM %s WHERE %s = OLD.%s; END;",
+                        TRIGGER_SHOW_DELETE, ShowsTable.TABLE_NAME,
+                        TABLE_NAME, COLUMN_SHOW_ID, ShowsTable.COLUMN_ID)
+        };
+    }
+
+    public static void onCreate(SQLiteDatabase db) {
+        String create = createTableSQL(TABLE_NAME);
+        Log.d(TAG, String.format("creating show progress table: %s", create));
+        db.execSQL(create);
+
+        for (String trigger : createTriggersSQL()) {
+            db.execSQL(trigger);
+        }
+    }
+
+    static void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 11) {
+            // Add show progress table, populated from the existing episodes
+            Log.d(TAG, "upgrading database: adding show progress table");
+            onCreate(db);
+            rebuild(db);
+        }
+    }
+
+    /**
+     * Recomputes every show's totals from the episodes table. The triggers
+     * keep these up to date during normal use, so this is only needed when
+     * the episodes table has been replaced wholesale, eg. by a restore.
+     */
+    public static void rebuild(SQLiteDatabase db) {
+        Log.d(TAG, "rebuilding show progress table");
+        db.beginTransaction();
+        try {
+            db.execSQL(String.format("DELETE FROM %s", TABLE_NAME));
+            db.execSQL(String.format(
+                    "INSERT INTO %s (%s, %s, %s) SELECT %s, " +
+                    "SUM(CASE WHEN %s != 0 THEN 1 ELSE 0 END), " +
+                    "SUM(CASE WHEN %s != 0 AND %s > 0 THEN 1 ELSE 0 END) " +
+                    "FROM %s GROUP BY %s",
+                    TABLE_NAME, COLUMN_SHOW_ID, COLUMN_TOTAL_EPISODES, COLUMN_TOTAL_WATCHED,
+                    EpisodesTable.COLUMN_SHOW_ID,
+                    EpisodesTable.COLUMN_SEASON_NUMBER,
+                    EpisodesTable.COLUMN_SEASON_NUMBER, EpisodesTable.COLUMN_WATCHED,
+                    EpisodesTable.TABLE_NAME, EpisodesTable.COLUMN_SHOW_ID
+            ));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Builds a query returning one row per show with its aired, watched and
+     * upcoming counts. The stored totals are read directly, and only the
+     * episodes which haven't aired yet are counted at query time, using the
+     * first aired index, since which episodes those are changes over time.
+     */
+    static String progressSQL() {
+        final String upcoming = String.format(
+                "SELECT %s, COUNT(*) AS upcoming, " +
+                "SUM(CASE WHEN %s > 0 THEN 1 ELSE 0 END) AS upcoming_watched " +
+                "FROM %s INDEXED BY %s " +
+                "WHERE %s != 0 AND (%s IS NULL OR %s >= %s) GROUP BY %s",
+                EpisodesTable.COLUMN_SHOW_ID,
+                EpisodesTable.COLUMN_WATCHED,
+                EpisodesTable.TABLE_NAME, EpisodesTable.INDEX_FIRST_AIRED,
+                EpisodesTable.COLUMN_SEASON_NUMBER,
+                EpisodesTable.COLUMN_FIRST_AIRED, EpisodesTable.COLUMN_FIRST_AIRED, NOW,
+                EpisodesTable.COLUMN_SHOW_ID);
+
+        return String.format(
+                "SELECT p.%s AS %s, " +
+                "p.%s - COALESCE(u.upcoming, 0) AS %s, " +
+                "p.%s - COALESCE(u.upcoming_watched, 0) AS %s, " +
+                "COALESCE(u.upcoming, 0) AS %s " +
+                "FROM %s p LEFT JOIN (%s) u ON u.%s = p.%s",
+                COLUMN_SHOW_ID, COLUMN_SHOW_ID,
+                COLUMN_TOTAL_EPISODES, COLUMN_NUM_AIRED,
+                COLUMN_TOTAL_WATCHED, COLUMN_NUM_WATCHED,
+                COLUMN_NUM_UPCOMING,
+                TABLE_NAME, upcoming, EpisodesTable.COLUMN_SHOW_ID, COLUMN_SHOW_ID);
+    }
+
+    /**
+     * Builds a query over the episodes table returning one row per distinct
+     * value of groupColumn, with the number of aired, watched and upcoming
+     * episodes in each group.
+     */
+    static String aggregateSQL(String groupColumn, String where) {
+        return String.format(
+                "SELECT %s, " +
+                "SUM(CASE WHEN %s THEN 1 ELSE 0 END) AS %s, " +
+                "SUM(CASE WHEN %s AND %s > 0 THEN 1 ELSE 0 END) AS %s, " +
+                "SUM(CASE WHEN %s THEN 0 ELSE 1 END) AS %s " +
+                "FROM %s%s GROUP BY %s",
+                groupColumn,
+                AIRED_CONDITION, COLUMN_NUM_AIRED,
+                AIRED_CONDITION, EpisodesTable.COLUMN_WATCHED, COLUMN_NUM_WATCHED,
+                AIRED_CONDITION, COLUMN_NUM_UPCOMING,
+                EpisodesTable.TABLE_NAME,
+                where != null ? " WHERE " + where : "",
+                groupColumn);
+    }
+}
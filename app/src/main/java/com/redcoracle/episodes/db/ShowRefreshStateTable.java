@@ -0,0 +1,65 @@
+package com.redcoracle.episodes.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+public class ShowRefreshStateTable {
+    private static final String TAG = ShowRefreshStateTable.class.getName();
+
+    public static final String TABLE_NAME = "show_refresh_state";
+
+    public static final String COLUMN_SHOW_ID = "show_id";
+    public static final String COLUMN_LANGUAGE = "language";
+    public static final String COLUMN_STATUS = "status";
+    public static final String COLUMN_LAST_AIR_DATE = "last_air_date";
+    public static final String COLUMN_NUMBER_OF_EPISODES = "number_of_episodes";
+    public static final String COLUMN_ETAG = "etag";
+    public static final String COLUMN_LAST_MODIFIED = "last_modified";
+    public static final String COLUMN_LAST_REFRESHED = "last_refreshed";
+
+    private static final String TRIGGER_SHOW_DELETE = "show_refresh_state_show_delete";
+
+    public static String createTableSQL(String table_name) {
+        return String.format(
+                "CREATE TABLE %s (" +
+                "%s INTEGER PRIMARY KEY," +
+                "%s TEXT," +
+                "%s TEXT," +
+                "%s DATE," +
+                "%s INTEGER NOT NULL DEFAULT 0," +
+                "%s TEXT," +
+                "%s TEXT," +
+                "%s INTEGER NOT NULL" +
+                ");",
+                table_name,
+                COLUMN_SHOW_ID,
+                COLUMN_LANGUAGE,
+                COLUMN_STATUS,
+                COLUMN_LAST_AIR_DATE,
+                COLUMN_NUMBER_OF_EPISODES,
+                COLUMN_ETAG,
+                COLUMN_LAST_MODIFIED,
+                COLUMN_LAST_REFRESHED
+        );
+    }
+
+    public static void onCreate(SQLiteDatabase db) {
+        String create = createTableSQL(TABLE_NAME);
+        Log.d(TAG, String.format("creating show refresh state table: %s", create));
+        db.execSQL(create);
+
+        db.execSQL(String.format(
+                "CREATE TRIGGER IF NOT EXISTS %s AFTER DELETE ON %s BEGIN DELETE FROM %s WHERE %s = OLD.%s; END;",
+                TRIGGER_SHOW_DELETE, ShowsTable.TABLE_NAME,
+                TABLE_NAME, COLUMN_SHOW_ID, ShowsTable.COLUMN_ID));
+    }
+
+    static void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 12) {
+            // Add show refresh state table. It starts out empty, so the first
+            // refresh after upgrading is a full one.
+            Log.d(TAG, "upgrading database: adding show refresh state table");
+            onCreate(db);
+        }
+    }
+}
@@ -22,6 +22,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.provider.BaseColumns;
 import android.util.Log;
 
+import java.util.Arrays;
+
 public class ShowsTable {
     private static final String TAG = "ShowsTable";
 
@@ -41,6 +43,7 @@ public class ShowsTable {
     public static final String COLUMN_FANART_PATH = "fanart_path";
     public static final String COLUMN_POSTER_PATH = "poster_path";
     public static final String COLUMN_NOTES = "notes";
+    public static final String COLUMN_CONTENT_HASH = "content_hash";
 
     public static final String COLUMN_TYPE_ID = "INTEGER PRIMARY KEY";
     public static final String COLUMN_TYPE_TVDB_ID = "INTEGER UNIQUE";
@@ -56,6 +59,7 @@ public class ShowsTable {
     public static final String COLUMN_TYPE_FANART_PATH = "TEXT";
     public static final String COLUMN_TYPE_POSTER_PATH = "TEXT";
     public static final String COLUMN_TYPE_NOTES = "TEXT";
+    public static final String COLUMN_TYPE_CONTENT_HASH = "INTEGER";
 
     public static String createTableSQL(String table_name) {
         return String.format(
@@ -73,6 +77,7 @@ public class ShowsTable {
             "    %s %s," +
             "    %s %s," +
             "    %s %s," +
+            "    %s %s," +
             "    %s %s" +
             ");",
             table_name,
@@ -89,7 +94,8 @@ public class ShowsTable {
             COLUMN_BANNER_PATH, COLUMN_TYPE_BANNER_PATH,
             COLUMN_FANART_PATH, COLUMN_TYPE_FANART_PATH,
             COLUMN_POSTER_PATH, COLUMN_TYPE_POSTER_PATH,
-            COLUMN_NOTES, COLUMN_TYPE_NOTES
+            COLUMN_NOTES, COLUMN_TYPE_NOTES,
+            COLUMN_CONTENT_HASH, COLUMN_TYPE_CONTENT_HASH
         );
     }
 
@@ -196,5 +202,19 @@ public class ShowsTable {
                 db.endTransaction();
             }
         }
+
+        if (oldVersion < 13) {
+            // Add content hash column. Tables rebuilt above already have it.
+            final Cursor cursor = db.query(TABLE_NAME, null, null, null, null, null, null, "0");
+            final String[] columns = cursor.getColumnNames();
+            cursor.close();
+            if (!Arrays.asList(columns).contains(COLUMN_CONTENT_HASH)) {
+                Log.d(TAG, "upgrading shows table: adding content hash column");
+                db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s %s",
+                        TABLE_NAME,
+                        COLUMN_CONTENT_HASH,
+                        COLUMN_TYPE_CONTENT_HASH));
+            }
+        }
     }
 }
@@ -0,0 +1,392 @@
+package com.redcoracle.episodes.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The part of the library which can't be fetched again from TMDB: which
+ * shows are in it, which of their episodes have been watched, and whether
+ * they're starred or archived, along with their notes. A whole library fits
+ * in a few KiB, so this can be saved far more often than a full backup.
+ *
+ * Each season's watched episodes are stored as a bitset indexed by episode
+ * number, run length encoded as alternating lengths of unwatched and
+ * watched runs starting from episode 0. Only seasons with a watched episode
+ * are stored.
+ */
+public class WatchedSnapshot {
+    private static final String TAG = WatchedSnapshot.class.getName();
+
+    public static final String FILE_EXTENSION = ".watched";
+
+    private static final int MAGIC = 0x45505731; // "EPW1"
+    private static final int VERSION = 1;
+
+    // Upper bounds on the lengths read from a snapshot, far beyond any real
+    // library, so a corrupt file fails to read rather than exhausting memory.
+    private static final int MAX_SHOWS = 1 << 16;
+    private static final int MAX_RUNS = 1 << 16;
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private static final int FLAG_STARRED = 1;
+    private static final int FLAG_ARCHIVED = 1 << 1;
+    private static final int FLAG_NOTES = 1 << 2;
+
+    public static class Show {
+        private final int tmdbId;
+        private final String language;
+        private final boolean starred;
+        private final boolean archived;
+        private final String notes;
+        private final List<Season> seasons = new ArrayList<>();
+
+        Show(int tmdbId, String language, boolean starred, boolean archived, String notes) {
+            this.tmdbId = tmdbId;
+            this.language = language;
+            this.starred = starred;
+            this.archived = archived;
+            this.notes = notes;
+        }
+
+        public int getTmdbId() {
+            return tmdbId;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+    }
+
+    private static class Season {
+        private final int number;
+        // Pairs of the number of unwatched episodes before a watched run,
+        // and the number of episodes in the run.
+        private int[] runs = new int[4];
+        private int size;
+        // The episode number after the end of the last run.
+        private int next;
+
+        Season(int number) {
+            this.number = number;
+        }
+
+        void addWatched(int episodeNumber) {
+            if (episodeNumber < next) {
+                // Duplicate or out of order, already covered by a run.
+                return;
+            }
+            if (size > 0 && episodeNumber == next) {
+                runs[size - 1] += 1;
+            } else {
+                if (size + 2 > runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[size] = episodeNumber - next;
+                runs[size + 1] = 1;
+                size += 2;
+            }
+            next = episodeNumber + 1;
+        }
+    }
+
+    private final List<Show> shows;
+
+    private WatchedSnapshot(List<Show> shows) {
+        this.shows = shows;
+    }
+
+    public List<Show> getShows() {
+        return shows;
+    }
+
+    /**
+     * Returns whether the stream, which must support mark, holds a watched
+     * snapshot. The stream is left where it was.
+     */
+    public static boolean isSnapshot(InputStream in) throws IOException {
+        in.mark(4);
+        final byte[] magic = new byte[4];
+        int read = 0;
+        int count;
+        while (read < magic.length && (count = in.read(magic, read, magic.length - read)) != -1) {
+            read += count;
+        }
+        in.reset();
+        return read == magic.length
+                && ((magic[0] & 0xff) << 24 | (magic[1] & 0xff) << 16 | (magic[2] & 0xff) << 8 | (magic[3] & 0xff)) == MAGIC;
+    }
+
+    /**
+     * Writes a snapshot of the library to out. Shows and episodes are read
+     * in the same transaction, so they're as of the same moment.
+     */
+    static void write(SQLiteDatabase db, OutputStream out) throws IOException {
+        final SparseArray<Show> byShowId = new SparseArray<>();
+        final List<Show> shows = new ArrayList<>();
+        int skipped = 0;
+        db.beginTransactionNonExclusive();
+        try {
+            final Cursor showsCursor = db.query(ShowsTable.TABLE_NAME,
+                    new String[] {
+                            ShowsTable.COLUMN_ID,
+                            ShowsTable.COLUMN_TMDB_ID,
+                            ShowsTable.COLUMN_LANGUAGE,
+                            ShowsTable.COLUMN_STARRED,
+                            ShowsTable.COLUMN_ARCHIVED,
+                            ShowsTable.COLUMN_NOTES
+                    },
+                    null, null, null, null, ShowsTable.COLUMN_ID);
+            try {
+                while (showsCursor.moveToNext()) {
+                    // Shows only known by their TVDB ID can't be found again.
+                    if (showsCursor.isNull(1)) {
+                        skipped += 1;
+                        continue;
+                    }
+                    final Show show = new Show(
+                            showsCursor.getInt(1),
+                            showsCursor.getString(2),
+                            showsCursor.getInt(3) > 0,
+                            showsCursor.getInt(4) > 0,
+                            showsCursor.getString(5));
+                    byShowId.put(showsCursor.getInt(0), show);
+                    shows.add(show);
+                }
+            } finally {
+                showsCursor.close();
+            }
+
+            final Cursor watchedCursor = db.rawQuery(String.format(
+                    "SELECT %s, %s, %s FROM %s WHERE %s > 0 AND %s IS NOT NULL AND %s >= 0 " +
+                    "ORDER BY %s, %s, %s",
+                    EpisodesTable.COLUMN_SHOW_ID, EpisodesTable.COLUMN_SEASON_NUMBER,
+                    EpisodesTable.COLUMN_EPISODE_NUMBER,
+                    EpisodesTable.TABLE_NAME,
+                    EpisodesTable.COLUMN_WATCHED, EpisodesTable.COLUMN_SEASON_NUMBER,
+                    EpisodesTable.COLUMN_EPISODE_NUMBER,
+                    EpisodesTable.COLUMN_SHOW_ID, EpisodesTable.COLUMN_SEASON_NUMBER,
+                    EpisodesTable.COLUMN_EPISODE_NUMBER), null);
+            try {
+                Show show = null;
+                Season season = null;
+                int showId = -1;
+                while (watchedCursor.moveToNext()) {
+                    if (watchedCursor.getInt(0) != showId) {
+                        showId = watchedCursor.getInt(0);
+                        show = byShowId.get(showId);
+                        season = null;
+                    }
+                    if (show == null) {
+                        continue;
+                    }
+                    final int seasonNumber = watchedCursor.getInt(1);
+                    if (season == null || season.number != seasonNumber) {
+                        season = new Season(seasonNumber);
+                        show.seasons.add(season);
+                    }
+                    season.addWatched(watchedCursor.getInt(2));
+                }
+            } finally {
+                watchedCursor.close();
+            }
+        } finally {
+            db.endTransaction();
+        }
+
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        writeVarint(data, shows.size());
+        for (Show show : shows) {
+            writeVarint(data, show.tmdbId);
+            int flags = 0;
+            flags |= show.starred ? FLAG_STARRED : 0;
+            flags |= show.archived ? FLAG_ARCHIVED : 0;
+            flags |= show.notes != null && !show.notes.isEmpty() ? FLAG_NOTES : 0;
+            data.writeByte(flags);
+            writeString(data, show.language != null ? show.language : "");
+            if ((flags & FLAG_NOTES) != 0) {
+                writeString(data, show.notes);
+            }
+            writeVarint(data, show.seasons.size());
+            for (Season season : show.seasons) {
+                writeVarint(data, season.number);
+                writeVarint(data, season.size);
+                for (int i = 0; i < season.size; i++) {
+                    writeVarint(data, season.runs[i]);
+                }
+            }
+        }
+        data.flush();
+        if (skipped > 0) {
+            Log.w(TAG, String.format("%d shows without a TMDB ID left out of snapshot", skipped));
+        }
+    }
+
+    public static WatchedSnapshot read(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a watched snapshot");
+        }
+        final int version = data.readInt();
+        if (version > VERSION) {
+            throw new IOException(String.format("Unsupported watched snapshot version %d", version));
+        }
+
+        final int showCount = readLength(data, MAX_SHOWS, "show count");
+        final List<Show> shows = new ArrayList<>(showCount);
+        for (int i = 0; i < showCount; i++) {
+            final int tmdbId = readVarint(data);
+            final int flags = data.readByte();
+            final String language = readString(data);
+            final String notes = (flags & FLAG_NOTES) != 0 ? readString(data) : null;
+            final Show show = new Show(tmdbId, language.isEmpty() ? null : language,
+                    (flags & FLAG_STARRED) != 0, (flags & FLAG_ARCHIVED) != 0, notes);
+            final int seasonCount = readVarint(data);
+            for (int j = 0; j < seasonCount; j++) {
+                final Season season = new Season(readVarint(data));
+                season.size = readLength(data, MAX_RUNS, "watched run count");
+                if (season.size % 2 != 0) {
+                    throw new IOException("Odd number of watched runs");
+                }
+                season.runs = new int[season.size];
+                for (int k = 0; k < season.size; k++) {
+                    season.runs[k] = readVarint(data);
+                }
+                show.seasons.add(season);
+            }
+            shows.add(show);
+        }
+        return new WatchedSnapshot(shows);
+    }
+
+    /**
+     * Merges the snapshot into the library in a single transaction. Nothing
+     * in the library is undone: watched episodes, stars and archive flags
+     * are added, and notes only fill in those which are empty. Returns the
+     * shows which aren't in the library, so can't be merged until they're
+     * added.
+     */
+    static List<Show> merge(SQLiteDatabase db, WatchedSnapshot snapshot) {
+        final List<Show> missing = new ArrayList<>();
+        final SQLiteStatement findShow = db.compileStatement(String.format(
+                "SELECT %s FROM %s WHERE %s=?",
+                ShowsTable.COLUMN_ID, ShowsTable.TABLE_NAME, ShowsTable.COLUMN_TMDB_ID));
+        final SQLiteStatement updateShow = db.compileStatement(String.format(
+                "UPDATE %1$s SET %2$s = MAX(COALESCE(%2$s, 0), ?), %3$s = MAX(COALESCE(%3$s, 0), ?), " +
+                "%4$s = CASE WHEN %4$s IS NULL OR %4$s = '' THEN ? ELSE %4$s END WHERE %5$s=?",
+                ShowsTable.TABLE_NAME, ShowsTable.COLUMN_STARRED, ShowsTable.COLUMN_ARCHIVED,
+                ShowsTable.COLUMN_NOTES, ShowsTable.COLUMN_ID));
+        // Only touches unwatched episodes, so the progress triggers only fire
+        // for rows which actually change.
+        final SQLiteStatement markWatched = db.compileStatement(String.format(
+                "UPDATE %1$s SET %2$s = 1 WHERE %3$s=? AND %4$s=? AND %5$s BETWEEN ? AND ? " +
+                "AND (%2$s IS NULL OR %2$s = 0)",
+                EpisodesTable.TABLE_NAME, EpisodesTable.COLUMN_WATCHED, EpisodesTable.COLUMN_SHOW_ID,
+                EpisodesTable.COLUMN_SEASON_NUMBER, EpisodesTable.COLUMN_EPISODE_NUMBER));
+
+        int watched = 0;
+        db.beginTransaction();
+        try {
+            for (Show show : snapshot.shows) {
+                final long showId;
+                findShow.bindLong(1, show.tmdbId);
+                try {
+                    showId = findShow.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    missing.add(show);
+                    continue;
+                }
+
+                updateShow.bindLong(1, show.starred ? 1 : 0);
+                updateShow.bindLong(2, show.archived ? 1 : 0);
+                if (show.notes != null) {
+                    updateShow.bindString(3, show.notes);
+                } else {
+                    updateShow.bindNull(3);
+                }
+                updateShow.bindLong(4, showId);
+                updateShow.executeUpdateDelete();
+
+                for (Season season : show.seasons) {
+                    int episode = 0;
+                    for (int i = 0; i < season.size; i += 2) {
+                        episode += season.runs[i];
+                        final int end = episode + season.runs[i + 1] - 1;
+                        markWatched.bindLong(1, showId);
+                        markWatched.bindLong(2, season.number);
+                        markWatched.bindLong(3, episode);
+                        markWatched.bindLong(4, end);
+                        watched += markWatched.executeUpdateDelete();
+                        episode = end + 1;
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            findShow.close();
+            updateShow.close();
+            markWatched.close();
+        }
+        Log.d(TAG, String.format("merged snapshot of %d shows: %d episodes marked watched, %d shows missing",
+                snapshot.shows.size(), watched, missing.size()));
+        return missing;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readLength(DataInputStream in, int max, String name) throws IOException {
+        final int length = readVarint(in);
+        if (length < 0 || length > max) {
+            throw new IOException(String.format("Invalid %s %d", name, length));
+        }
+        return length;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[readLength(in, MAX_STRING_BYTES, "string length")];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
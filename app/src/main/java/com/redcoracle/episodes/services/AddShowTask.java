@@ -27,12 +27,27 @@ public class AddShowTask implements Callable<Void> {
     private final int tmdbId;
     private final String showName;
     private final String showLanguage;
+    private final boolean showMessages;
     private final Context context;
 
+    // TaskScheduler key, so repeated taps don't add a show twice.
+    public static String key(int tmdbId) {
+        return String.format("add_show:%d", tmdbId);
+    }
+
+    // showName is only used for messages, so may be null if it isn't known
+    // yet, in which case the fetched show's name is used.
     public AddShowTask(int tmdbId, String showName, String showLanguage) {
+        this(tmdbId, showName, showLanguage, true);
+    }
+
+    // Shows added in bulk, such as by a restore, are added without a toast
+    // for each, and summarised by whatever added them instead.
+    public AddShowTask(int tmdbId, String showName, String showLanguage, boolean showMessages) {
         this.tmdbId = tmdbId;
         this.showName = showName;
         this.showLanguage = showLanguage;
+        this.showMessages = showMessages;
         this.context = EpisodesApplication.getInstance().getApplicationContext();
     }
 
@@ -40,12 +55,15 @@ public class AddShowTask implements Callable<Void> {
     public Void call() {
         final Client tmdbClient = new Client();
         Show show = tmdbClient.getShow(this.tmdbId, this.showLanguage, false);
+        final String showName = this.showName != null ? this.showName : show.getName();
 
         if (!checkAlreadyAdded(show)) {
             this.showMessage(this.context.getString(R.string.adding_show, showName));
             show = tmdbClient.getShow(this.tmdbId, this.showLanguage, true);
             final int showId = insertShow(show);
             this.insertEpisodes(show.getEpisodes().toArray(new Episode[0]), showId);
+            EpisodesApplication.getInstance().getArtworkStore().sync(this.context.getContentResolver(),
+                    Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(showId)));
             showMessage(this.context.getString(R.string.show_added, showName));
         } else {
             showMessage(this.context.getString(R.string.show_already_added, showName));
@@ -96,6 +114,7 @@ public class AddShowTask implements Callable<Void> {
         showValues.put(ShowsTable.COLUMN_BANNER_PATH, show.getBannerPath());
         showValues.put(ShowsTable.COLUMN_FANART_PATH, show.getFanartPath());
         showValues.put(ShowsTable.COLUMN_POSTER_PATH, show.getPosterPath());
+        showValues.put(ShowsTable.COLUMN_CONTENT_HASH, show.contentHash());
 
         final Uri showUri = this.context.getContentResolver().insert(ShowsProvider.CONTENT_URI_SHOWS, showValues);
         final int showId = Integer.parseInt(showUri.getLastPathSegment());
@@ -120,15 +139,17 @@ public class AddShowTask implements Callable<Void> {
             if (episodes[i].getFirstAired() != null) {
                 value.put(EpisodesTable.COLUMN_FIRST_AIRED, episodes[i].getFirstAired().getTime() / 1000);
             }
+            value.put(EpisodesTable.COLUMN_CONTENT_HASH, episodes[i].contentHash());
             values[i] = value;
         }
 
-        for (ContentValues value : values) {
-            this.context.getContentResolver().insert(ShowsProvider.CONTENT_URI_EPISODES, value);
-        }
+        this.context.getContentResolver().bulkInsert(ShowsProvider.CONTENT_URI_EPISODES, values);
     }
 
     private void showMessage(String message) {
+        if (!this.showMessages) {
+            return;
+        }
         Handler handler = new Handler(Looper.getMainLooper());
         handler.post(() -> Toast.makeText(context, message, Toast.LENGTH_SHORT).show());
     }
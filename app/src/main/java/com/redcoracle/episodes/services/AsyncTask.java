@@ -1,19 +0,0 @@
-package com.redcoracle.episodes.services;
-
-import java.util.concurrent.Callable;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
-public class AsyncTask {
-    private final Executor executor = Executors.newSingleThreadExecutor();
-
-    public <R> void executeAsync(Callable<R> callable) {
-        executor.execute(() -> {
-            try {
-                callable.call();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
-    }
-}
@@ -1,68 +1,204 @@
 package com.redcoracle.episodes.services;
 
 import android.content.Context;
+import android.database.SQLException;
+import android.net.Uri;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
 import androidx.core.content.ContextCompat;
 
 import com.redcoracle.episodes.EpisodesApplication;
+import com.redcoracle.episodes.FileUtilities;
 import com.redcoracle.episodes.R;
-import com.redcoracle.episodes.db.DatabaseOpenHelper;
+import com.redcoracle.episodes.db.LibraryExport;
+import com.redcoracle.episodes.db.ShowsProvider;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
 import java.util.concurrent.Callable;
 
 public class BackupTask implements Callable<Void> {
     private final static String TAG = BackupTask.class.getName();
+
+    public enum Kind {
+        // A copy of the database file.
+        DATABASE,
+        // A compressed LibraryExport of the whole library.
+        EXPORT,
+        // A LibraryExport of the changes since the last export.
+        EXPORT_CHANGES,
+        // A WatchedSnapshot, of only what can't be fetched again.
+        WATCHED_SNAPSHOT
+    }
+
+    // Distinct from the refresh notification, so a backup taken during a
+    // refresh doesn't replace its progress.
+    private static final int NOTIFICATION_ID = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final Context context;
     private final String destinationFileName;
+    private final Uri destinationUri;
+    private final Kind kind;
 
     public BackupTask(String destinationFileName) {
+        this(destinationFileName, Kind.DATABASE);
+    }
+
+    // Backs up to the named file in the app's external files directory.
+    public BackupTask(String destinationFileName, Kind kind) {
         this.destinationFileName = destinationFileName;
+        this.destinationUri = null;
+        this.kind = kind;
+        this.context = EpisodesApplication.getInstance().getApplicationContext();
+    }
+
+    public BackupTask(Uri destinationUri) {
+        this(destinationUri, Kind.DATABASE);
+    }
+
+    // Backs up to a document chosen with the storage access framework.
+    public BackupTask(Uri destinationUri, Kind kind) {
+        this.destinationFileName = null;
+        this.destinationUri = destinationUri;
+        this.kind = kind;
         this.context = EpisodesApplication.getInstance().getApplicationContext();
     }
 
     public Void call() {
         Log.i(TAG, "Backing up library.");
-        if (!isExternalStorageReadable()) {
-            Log.i(TAG, "Storage is not readable.");
+        if (this.destinationUri == null && !isExternalStorageWritable()) {
+            Log.i(TAG, "Storage is not writable.");
+            showToast(this.context.getString(R.string.back_up_error_message));
             return null;
         }
-        final File databaseFile = this.context.getDatabasePath(DatabaseOpenHelper.getDbName());
-        final File destinationDirectory = new File(this.context.getExternalFilesDir(null), "episodes");
-        if (!destinationDirectory.mkdirs()) {
-            Log.e(TAG, String.format("Error creating backup directory '%s'.", destinationDirectory.getPath()));
-        }
-        final File destinationFile = new File(destinationDirectory, this.destinationFileName);
+
+        final NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this.context);
+        final NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(this.context, "episodes_channel_id");
+        notificationBuilder
+                .setContentTitle("Backing up library")
+                .setSmallIcon(R.drawable.ic_show_starred)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setProgress(0, 0, true);
+        notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
+
+        // The snapshot is taken next to the app's other files, where it can
+        // be written quickly, then streamed to the destination, which may be
+        // slow or remote, without holding up the database. Each backup has
+        // its own file, as two can run at once.
+        File snapshot = null;
         try {
-            FileChannel src = new FileInputStream(databaseFile).getChannel();
-            FileChannel dest = new FileOutputStream(destinationFile).getChannel();
-            dest.transferFrom(src, 0, src.size());
-            ContextCompat.getMainExecutor(this.context).execute(() -> Toast.makeText(
-                this.context,
-                String.format(this.context.getString(R.string.back_up_success_message), this.destinationFileName),
-                Toast.LENGTH_LONG
-            ).show());
-            Log.i(TAG, String.format("Library backed up successfully: '%s'.", destinationFile.getPath()));
-            src.close();
-            dest.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+            snapshot = File.createTempFile("backup", ".tmp", this.context.getCacheDir());
+            final long start = SystemClock.elapsedRealtime();
+            LibraryExport.Manifest manifest = null;
+            if (this.kind == Kind.DATABASE) {
+                // Only the unique name is needed, as a database snapshot
+                // has to create the file itself.
+                snapshot.delete();
+                ShowsProvider.snapshotDatabase(this.context, snapshot);
+            } else if (this.kind == Kind.WATCHED_SNAPSHOT) {
+                try (OutputStream out = new FileOutputStream(snapshot)) {
+                    ShowsProvider.writeWatchedSnapshot(this.context, out);
+                }
+            } else {
+                // With no previous export, the changes are the whole library.
+                final LibraryExport.Manifest base = this.kind == Kind.EXPORT_CHANGES
+                        ? LibraryExport.loadManifest(this.context)
+                        : null;
+                try (OutputStream out = new FileOutputStream(snapshot)) {
+                    manifest = ShowsProvider.exportLibrary(this.context, out, base);
+                }
+            }
+            final long snapshotted = SystemClock.elapsedRealtime();
+
+            final long total = snapshot.length();
+            long written = 0;
+            int percent = 0;
+            try (InputStream in = new FileInputStream(snapshot);
+                 OutputStream out = openDestination()) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                    written += count;
+                    // Only notify when the displayed progress changes, as
+                    // notifications are rate limited.
+                    final int newPercent = (int)(written * 100 / total);
+                    if (newPercent != percent) {
+                        percent = newPercent;
+                        notificationBuilder.setProgress(100, percent, false);
+                        notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
+                    }
+                }
+            }
+            final long finished = SystemClock.elapsedRealtime();
+            // Only once the export is safely stored can the next one hold
+            // just the changes since it.
+            if (manifest != null) {
+                LibraryExport.saveManifest(this.context, manifest);
+            }
+
+            final String name = getDestinationName();
+            Log.i(TAG, String.format(Locale.ROOT, "Library backed up to '%s' (%s): %d KiB, snapshot %d ms, write %d ms.",
+                    name, this.kind, written / 1024, snapshotted - start, finished - snapshotted));
+            notificationBuilder.setContentText("Back-up complete!").setProgress(0, 0, false);
+            notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
+            showToast(String.format(this.context.getString(R.string.back_up_success_message), name));
+        } catch (IOException | SQLException e) {
+            Log.e(TAG, "Error backing up library.", e);
+            notificationManager.cancel(NOTIFICATION_ID);
+            showToast(this.context.getString(R.string.back_up_error_message));
+        } finally {
+            if (snapshot != null) {
+                snapshot.delete();
+            }
         }
         return null;
     }
 
-    private boolean isExternalStorageReadable() {
-        String state = Environment.getExternalStorageState();
-        return Environment.MEDIA_MOUNTED.equals(state) || Environment.MEDIA_MOUNTED_READ_ONLY.equals(state);
+    private OutputStream openDestination() throws IOException {
+        if (this.destinationUri != null) {
+            final OutputStream out = this.context.getContentResolver().openOutputStream(this.destinationUri, "w");
+            if (out == null) {
+                throw new IOException(String.format("Could not open '%s'.", this.destinationUri));
+            }
+            return out;
+        }
+
+        final File destinationDirectory = new File(this.context.getExternalFilesDir(null), "episodes");
+        if (!destinationDirectory.isDirectory() && !destinationDirectory.mkdirs()) {
+            throw new IOException(String.format("Error creating backup directory '%s'.", destinationDirectory.getPath()));
+        }
+        return new FileOutputStream(new File(destinationDirectory, this.destinationFileName));
+    }
+
+    private String getDestinationName() {
+        if (this.destinationUri != null) {
+            return FileUtilities.uri_to_filename(this.context, this.destinationUri);
+        }
+        return this.destinationFileName;
+    }
+
+    private void showToast(String message) {
+        ContextCompat.getMainExecutor(this.context).execute(() -> Toast.makeText(
+            this.context,
+            message,
+            Toast.LENGTH_LONG
+        ).show());
+    }
+
+    private boolean isExternalStorageWritable() {
+        return Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState());
     }
 }
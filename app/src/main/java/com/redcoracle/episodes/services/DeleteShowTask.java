@@ -6,7 +6,6 @@ import android.net.Uri;
 import android.util.Log;
 
 import com.redcoracle.episodes.EpisodesApplication;
-import com.redcoracle.episodes.db.EpisodesTable;
 import com.redcoracle.episodes.db.ShowsProvider;
 
 import java.util.concurrent.Callable;
@@ -16,6 +15,10 @@ public class DeleteShowTask implements Callable<Void> {
     private int showId;
     private Context context;
 
+    public static String key(int showId) {
+        return String.format("delete_show:%d", showId);
+    }
+
     public DeleteShowTask(int showId) {
         this.showId = showId;
         this.context = EpisodesApplication.getInstance().getApplicationContext();
@@ -23,10 +26,21 @@ public class DeleteShowTask implements Callable<Void> {
 
     @Override
     public Void call() {
+        // There's no point finishing a refresh of the show, and one which
+        // is already writing would add episodes back once they're deleted,
+        // so the delete waits for it to stop.
+        final TaskScheduler scheduler = EpisodesApplication.getInstance().getTaskScheduler();
+        final String refreshKey = RefreshShowTask.key(this.showId);
+        scheduler.cancel(refreshKey);
+        try {
+            scheduler.awaitFinished(refreshKey);
+        } catch (InterruptedException e) {
+            Log.w(TAG, String.format("Delete of show %d interrupted", this.showId));
+            return null;
+        }
+
         final ContentResolver resolver = this.context.getContentResolver();
-        final String selection = String.format("%s=?", EpisodesTable.COLUMN_SHOW_ID);
-        final String[] selectionArgs = {String.valueOf(this.showId)};
-        int episodes = resolver.delete(ShowsProvider.CONTENT_URI_EPISODES, selection, selectionArgs);
+        int episodes = resolver.delete(ShowsProvider.getShowEpisodesUri(this.showId), null, null);
         Log.d(TAG, String.format("Deleted %s episodes", episodes));
         resolver.delete(Uri.withAppendedPath(ShowsProvider.CONTENT_URI_SHOWS, String.valueOf(showId)), null, null);
         return null;
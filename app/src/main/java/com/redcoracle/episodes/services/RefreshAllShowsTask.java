@@ -4,20 +4,43 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 
+import com.redcoracle.episodes.ArtworkStore;
 import com.redcoracle.episodes.EpisodesApplication;
 import com.redcoracle.episodes.R;
+import com.redcoracle.episodes.RefreshShowUtil;
 import com.redcoracle.episodes.db.ShowsProvider;
 import com.redcoracle.episodes.db.ShowsTable;
+import com.redcoracle.episodes.tvdb.Show;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
-
-import static com.redcoracle.episodes.RefreshShowUtil.refreshShow;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class RefreshAllShowsTask implements Callable<Void> {
+    private static final String TAG = RefreshAllShowsTask.class.getName();
+
+    // TaskScheduler key, so only one refresh of all shows runs at a time.
+    public static final String KEY = "refresh_all_shows";
+
+    // Number of shows fetched from TMDB concurrently. Requests within each
+    // show are further capped by the TMDB client's per-host request limit.
+    private static final int NUM_FETCH_WORKERS = 4;
+
+    // Maximum number of shows fetched but not yet written, which bounds how
+    // many show/episode graphs are held in memory at once.
+    private static final int MAX_PENDING_SHOWS = NUM_FETCH_WORKERS * 2;
+
     @Override
     public Void call() {
         Context context = EpisodesApplication.getInstance().getApplicationContext();
@@ -31,7 +54,14 @@ public class RefreshAllShowsTask implements Callable<Void> {
         final Cursor cursor = resolver.query(showUri, projection, null, null, sort);
         final int idColumnIndex = cursor.getColumnIndex(ShowsTable.COLUMN_ID);
         final int nameColumnIndex = cursor.getColumnIndex(ShowsTable.COLUMN_NAME);
-        final int total = cursor.getCount();
+        final List<Integer> showIds = new ArrayList<>(cursor.getCount());
+        final List<String> showNames = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            showIds.add(cursor.getInt(idColumnIndex));
+            showNames.add(cursor.getString(nameColumnIndex));
+        }
+        cursor.close();
+        final int total = showIds.size();
 
         NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
         NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context, "episodes_channel_id");
@@ -43,21 +73,95 @@ public class RefreshAllShowsTask implements Callable<Void> {
         notificationBuilder.setProgress(total, current, false);
         notificationManager.notify(0, notificationBuilder.build());
 
-        int showId;
-        String showName;
-        cursor.moveToFirst();
-        do {
-            showId = cursor.getInt(idColumnIndex);
-            showName = cursor.getString(nameColumnIndex);
-            notificationBuilder.setContentText(showName);
-            notificationBuilder.setProgress(total, current, false);
-            notificationManager.notify(0, notificationBuilder.build());
-            refreshShow(showId, resolver);
-            current += 1;
-        } while (cursor.moveToNext());
-        cursor.close();
+        // Shows are fetched by a pool of network workers, while this thread
+        // is the single writer applying each fetched show to the database
+        // as soon as it arrives. Writes never contend with each other, and
+        // the network stays busy while the database is being updated.
+        final ExecutorService fetchers = Executors.newFixedThreadPool(NUM_FETCH_WORKERS);
+        final CompletionService<FetchedShow> fetched = new ExecutorCompletionService<>(fetchers);
+        int submitted = 0;
+        int rowsWritten = 0;
+        try {
+            while (submitted < total && submitted < MAX_PENDING_SHOWS) {
+                fetched.submit(new FetchShowTask(showIds.get(submitted), showNames.get(submitted), resolver));
+                submitted += 1;
+            }
+
+            while (current < total) {
+                final Future<FetchedShow> next = fetched.take();
+                if (submitted < total) {
+                    fetched.submit(new FetchShowTask(showIds.get(submitted), showNames.get(submitted), resolver));
+                    submitted += 1;
+                }
+
+                try {
+                    final FetchedShow result = next.get();
+                    notificationBuilder.setContentText(result.showName);
+                    notificationBuilder.setProgress(total, current, false);
+                    notificationManager.notify(0, notificationBuilder.build());
+                    rowsWritten += RefreshShowUtil.applyShow(result.showId, result.show, resolver);
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Error refreshing show", e.getCause());
+                }
+                current += 1;
+            }
+        } catch (InterruptedException e) {
+            // Cancelled, so skip the artwork and maintenance too.
+            Log.w(TAG, String.format("Refresh interrupted after %d of %d shows", current, total));
+            notificationManager.cancel(0);
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            fetchers.shutdownNow();
+        }
+
+        // Artwork is fetched once every show is written, so that the
+        // library can be displayed offline, including any new artwork.
+        final ArtworkStore artworkStore = EpisodesApplication.getInstance().getArtworkStore();
+        notificationBuilder.setContentText("Downloading artwork");
+        notificationManager.notify(0, notificationBuilder.build());
+        final int artworkDownloaded = artworkStore.sync(resolver, ShowsProvider.CONTENT_URI_SHOWS);
+        artworkStore.trim();
+
+        // A full refresh is the largest write the app makes, so fold the write
+        // ahead log back into the database and update the planner statistics.
+        ShowsProvider.checkpointDatabase(context, true);
+
+        Log.i(TAG, String.format("Refreshed %d shows, %d rows written, %d artwork downloaded. TMDB %s, %s, %s",
+                current, rowsWritten, artworkDownloaded, EpisodesApplication.getInstance().getTmdbCacheStats(),
+                ShowsProvider.getChangeNotificationStats(context),
+                EpisodesApplication.getInstance().getTaskScheduler().getStats()));
         notificationBuilder.setContentText("Refresh complete!").setProgress(0, 0, false);
         notificationManager.notify(0, notificationBuilder.build());
         return null;
     }
+
+    private static class FetchedShow {
+        private final int showId;
+        private final String showName;
+        private final Show show;
+
+        FetchedShow(int showId, String showName, Show show) {
+            this.showId = showId;
+            this.showName = showName;
+            this.show = show;
+        }
+    }
+
+    private static class FetchShowTask implements Callable<FetchedShow> {
+        private final int showId;
+        private final String showName;
+        private final ContentResolver resolver;
+
+        FetchShowTask(int showId, String showName, ContentResolver resolver) {
+            this.showId = showId;
+            this.showName = showName;
+            this.resolver = resolver;
+        }
+
+        @Override
+        public FetchedShow call() {
+            return new FetchedShow(showId, showName, RefreshShowUtil.fetchShow(showId, resolver));
+        }
+    }
 }
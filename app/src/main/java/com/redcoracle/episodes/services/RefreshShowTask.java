@@ -12,6 +12,11 @@ public class RefreshShowTask implements Callable<Void> {
     private int showId;
     private Context context;
 
+    // TaskScheduler key, so each show is only refreshed once at a time.
+    public static String key(int showId) {
+        return String.format("refresh_show:%d", showId);
+    }
+
     public RefreshShowTask(int showId) {
         this.showId = showId;
         this.context = EpisodesApplication.getInstance().getApplicationContext();
@@ -1,61 +1,158 @@
 package com.redcoracle.episodes.services;
 
 import android.content.Context;
+import android.database.SQLException;
+import android.net.Uri;
 import android.os.Environment;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
 import androidx.core.content.ContextCompat;
 
 import com.bumptech.glide.Glide;
 import com.redcoracle.episodes.EpisodesApplication;
 import com.redcoracle.episodes.R;
-import com.redcoracle.episodes.db.DatabaseOpenHelper;
+import com.redcoracle.episodes.db.LibraryExport;
 import com.redcoracle.episodes.db.ShowsProvider;
+import com.redcoracle.episodes.db.WatchedSnapshot;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class RestoreTask implements Callable<Void> {
     private final static String TAG = RestoreTask.class.getName();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Distinct from the refresh and backup notifications.
+    private static final int NOTIFICATION_ID = 2;
     private final Context context;
     private final String filename;
+    private final Uri uri;
 
-
+    // Restores from a file in the app's external files directory.
     public RestoreTask(String filename) {
         this.context = EpisodesApplication.getInstance().getApplicationContext();
         this.filename = filename;
+        this.uri = null;
+    }
+
+    // Restores from a document chosen with the storage access framework.
+    public RestoreTask(Uri uri) {
+        this.context = EpisodesApplication.getInstance().getApplicationContext();
+        this.filename = null;
+        this.uri = uri;
     }
 
     public Void call() {
-        if (!isExternalStorageWritable()) {
+        if (this.uri == null && !isExternalStorageWritable()) {
             return null;
         }
-        final File backupFile = new File(this.filename);
-        final File databaseFile = this.context.getDatabasePath(DatabaseOpenHelper.getDbName());
-        try {
-            FileChannel src = new FileInputStream(backupFile).getChannel();
-            FileChannel dest = new FileOutputStream(databaseFile).getChannel();
-            dest.transferFrom(src, 0, src.size());
-            Glide.get(this.context).clearDiskCache();
+        try (InputStream in = new BufferedInputStream(openSource(), BUFFER_SIZE)) {
+            // Either a database file, a library export or a watched snapshot.
+            if (LibraryExport.isExport(in)) {
+                restoreExport(in);
+            } else if (WatchedSnapshot.isSnapshot(in)) {
+                restoreWatchedSnapshot(in);
+            } else {
+                restoreDatabase(in);
+            }
             ContextCompat.getMainExecutor(this.context).execute(() -> Toast.makeText(
                 this.context,
                 this.context.getString(R.string.restore_success_message),
                 Toast.LENGTH_LONG
             ).show());
             Log.i(TAG, "Library restored successfully.");
-        } catch (IOException e) {
+        } catch (IOException | SQLException e) {
             Log.e(TAG, String.format("Error restoring library: %s", e.toString()));
-        } finally {
-            ShowsProvider.reloadDatabase(this.context);
+            ContextCompat.getMainExecutor(this.context).execute(() -> Toast.makeText(
+                this.context,
+                this.context.getString(R.string.restore_error_message),
+                Toast.LENGTH_LONG
+            ).show());
+        }
+        return null;
+    }
+
+    private InputStream openSource() throws IOException {
+        if (this.uri != null) {
+            final InputStream in = this.context.getContentResolver().openInputStream(this.uri);
+            if (in == null) {
+                throw new IOException(String.format("Could not open '%s'.", this.uri));
+            }
+            return in;
         }
+        return new FileInputStream(new File(this.filename));
+    }
+
+    private void restoreExport(InputStream in) throws IOException {
+        final LibraryExport.Manifest manifest = ShowsProvider.importLibrary(
+                this.context, in, LibraryExport.loadManifest(this.context));
+        LibraryExport.saveManifest(this.context, manifest);
+    }
+
+    // Shows missing from the library have to be added from TMDB, which is
+    // slow, but is only needed when restoring to a new device. They're added
+    // in the background, like a refresh, rather than holding up the restore,
+    // and the snapshot merged into them once they've all been added.
+    private void restoreWatchedSnapshot(InputStream in) throws IOException {
+        final WatchedSnapshot snapshot = WatchedSnapshot.read(in);
+        final List<WatchedSnapshot.Show> missing = ShowsProvider.mergeWatchedSnapshot(this.context, snapshot);
+        if (missing.isEmpty()) {
+            return;
+        }
+        final TaskScheduler scheduler = EpisodesApplication.getInstance().getTaskScheduler();
+        final List<Future<?>> adds = new ArrayList<>(missing.size());
+        for (WatchedSnapshot.Show show : missing) {
+            adds.add(scheduler.submit(TaskScheduler.Priority.BACKGROUND, AddShowTask.key(show.getTmdbId()),
+                    new AddShowTask(show.getTmdbId(), null, show.getLanguage(), false)));
+        }
+        // Submitted after the adds at the same priority, so it doesn't start
+        // until they all have, and only waits on the last of them.
+        scheduler.submit(TaskScheduler.Priority.BACKGROUND, () -> mergeAddedShows(snapshot, adds));
+    }
+
+    private Void mergeAddedShows(WatchedSnapshot snapshot, List<Future<?>> adds) throws InterruptedException {
+        for (Future<?> add : adds) {
+            try {
+                add.get();
+            } catch (ExecutionException | CancellationException e) {
+                // Logged by the scheduler, and the show is counted below.
+            }
+        }
+        // Merging again is cheap, as shows already merged are unchanged.
+        final int notAdded = ShowsProvider.mergeWatchedSnapshot(this.context, snapshot).size();
+        final int added = adds.size() - notAdded;
+        Log.i(TAG, String.format("Added %d shows from snapshot, %d could not be added", added, notAdded));
+
+        final NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this.context);
+        final NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(this.context, "episodes_channel_id");
+        notificationBuilder
+                .setContentTitle("Restored library")
+                .setContentText(notAdded == 0
+                        ? String.format(Locale.getDefault(), "Added %d shows", added)
+                        : String.format(Locale.getDefault(), "Added %d shows, %d could not be added", added, notAdded))
+                .setSmallIcon(R.drawable.ic_show_starred)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT);
+        notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
         return null;
     }
 
+    private void restoreDatabase(InputStream in) throws IOException {
+        ShowsProvider.restoreDatabase(this.context, in);
+        Glide.get(this.context).clearDiskCache();
+    }
+
     private boolean isExternalStorageWritable() {
         String state = Environment.getExternalStorageState();
         return Environment.MEDIA_MOUNTED.equals(state);
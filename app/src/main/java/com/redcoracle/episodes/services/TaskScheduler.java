@@ -0,0 +1,232 @@
+package com.redcoracle.episodes.services;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs the app's background tasks on a small shared pool of workers, taking
+// the tasks the user is waiting on before those they aren't.
+public class TaskScheduler {
+    private static final String TAG = TaskScheduler.class.getName();
+
+    public enum Priority {
+        // Started by the user, who is waiting on it, eg. adding a show.
+        USER,
+        // Started by the app, eg. the periodic refresh of all shows.
+        BACKGROUND
+    }
+
+    // Two workers, so a user task need never wait behind a long running
+    // refresh, which itself fetches on its own pool.
+    private static final int NUM_WORKERS = 2;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Tasks with a key which are queued or running, by key.
+    private final Map<String, Task<?>> inFlight = new HashMap<>();
+
+    // Guarded by this.
+    private int maxQueueDepth;
+    private long completed;
+    private long failed;
+    private long cancelled;
+    private long deduplicated;
+    private long totalWaitMs;
+    private long maxWaitMs;
+    private long totalRunMs;
+    private long maxRunMs;
+
+    public TaskScheduler() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, String.format(Locale.ROOT, "TaskScheduler #%d", threadCount.incrementAndGet()));
+
+        this.executor = new ThreadPoolExecutor(
+                NUM_WORKERS,
+                NUM_WORKERS,
+                WORKER_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public Future<?> submit(Priority priority, Callable<?> callable) {
+        return submit(priority, null, callable);
+    }
+
+    // Tasks with the same key do the same work, so while one is queued or
+    // running another isn't started; instead the one in flight is returned,
+    // and if it's still queued, it takes the higher of the two priorities.
+    // A cancelled task doesn't count, as it won't do the work.
+    public synchronized Future<?> submit(Priority priority, String key, Callable<?> callable) {
+        if (key != null) {
+            final Task<?> existing = this.inFlight.get(key);
+            if (existing != null && !existing.isCancelled()) {
+                this.deduplicated++;
+                if (priority.compareTo(existing.priority) < 0 && this.executor.getQueue().remove(existing)) {
+                    existing.priority = priority;
+                    this.executor.execute(existing);
+                }
+                Log.d(TAG, String.format("%s is already in flight.", key));
+                return existing;
+            }
+        }
+
+        final Task<?> task = new Task<>(key, priority, callable);
+        if (key != null) {
+            this.inFlight.put(key, task);
+        }
+        this.executor.execute(task);
+        this.maxQueueDepth = Math.max(this.maxQueueDepth, this.executor.getQueue().size());
+        return task;
+    }
+
+    // Cancels the task in flight with the given key, interrupting it if it
+    // has started. A started task may not stop at the interrupt, so it stays
+    // in flight until it has actually returned; see awaitFinished().
+    // Returns whether there was one to cancel.
+    public synchronized boolean cancel(String key) {
+        final Task<?> task = this.inFlight.get(key);
+        if (task == null) {
+            return false;
+        }
+        this.executor.getQueue().remove(task);
+        return task.cancel(true);
+    }
+
+    // Blocks until the task in flight with the given key, if any, has
+    // finished. Only to be called from another task, never the main thread.
+    public void awaitFinished(String key) throws InterruptedException {
+        final Task<?> task;
+        synchronized (this) {
+            task = this.inFlight.get(key);
+        }
+        if (task != null) {
+            task.finished.await();
+        }
+    }
+
+    public synchronized String getStats() {
+        final long finished = Math.max(1, this.completed + this.failed);
+        return String.format(Locale.ROOT,
+                "tasks %d completed, %d failed, %d cancelled, %d deduplicated; queue depth %d (max %d); wait avg %d ms (max %d); run avg %d ms (max %d)",
+                this.completed, this.failed, this.cancelled, this.deduplicated,
+                this.executor.getQueue().size(), this.maxQueueDepth,
+                this.totalWaitMs / finished, this.maxWaitMs,
+                this.totalRunMs / finished, this.maxRunMs);
+    }
+
+    private synchronized void finished(Task<?> task) {
+        if (task.finished.getCount() == 0) {
+            return;
+        }
+        task.finished.countDown();
+        if (task.key != null && this.inFlight.get(task.key) == task) {
+            this.inFlight.remove(task.key);
+        }
+
+        // Tasks cancelled while queued never started.
+        if (task.startedAt == 0) {
+            this.cancelled++;
+            Log.d(TAG, String.format("%s cancelled before starting.", task.name));
+            return;
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        final long waitMs = task.startedAt - task.queuedAt;
+        final long runMs = now - task.startedAt;
+        this.totalWaitMs += waitMs;
+        this.maxWaitMs = Math.max(this.maxWaitMs, waitMs);
+        this.totalRunMs += runMs;
+        this.maxRunMs = Math.max(this.maxRunMs, runMs);
+
+        try {
+            task.get();
+            this.completed++;
+        } catch (CancellationException e) {
+            this.cancelled++;
+        } catch (ExecutionException e) {
+            this.failed++;
+            Log.e(TAG, String.format("%s failed", task.name), e.getCause());
+        } catch (InterruptedException e) {
+            // The task is done, so get() doesn't block.
+            Thread.currentThread().interrupt();
+        }
+
+        Log.d(TAG, String.format(Locale.ROOT, "%s (%s) finished: waited %d ms, ran %d ms, queue depth %d.",
+                task.name, task.priority, waitMs, runMs, this.executor.getQueue().size()));
+    }
+
+    private class Task<R> extends FutureTask<R> implements Comparable<Task<?>> {
+        private final String key;
+        private final String name;
+        private final long sequence;
+        private final long queuedAt;
+        // Counted down once the task will do no more work: when it returns,
+        // or when it's cancelled before starting.
+        private final CountDownLatch finished = new CountDownLatch(1);
+        // Only changed while the task is out of the queue.
+        private volatile Priority priority;
+        private volatile long startedAt;
+
+        Task(String key, Priority priority, Callable<R> callable) {
+            super(callable);
+            this.key = key;
+            this.name = key != null ? key : callable.getClass().getSimpleName();
+            this.priority = priority;
+            this.sequence = TaskScheduler.this.sequence.getAndIncrement();
+            this.queuedAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void run() {
+            if (!isDone()) {
+                this.startedAt = SystemClock.elapsedRealtime();
+            }
+            try {
+                super.run();
+            } finally {
+                if (this.startedAt != 0) {
+                    finished(this);
+                }
+            }
+        }
+
+        // Also called as soon as the task is cancelled, even while it's
+        // still running, in which case run() finishes it instead.
+        @Override
+        protected void done() {
+            if (this.startedAt == 0) {
+                finished(this);
+            }
+        }
+
+        // Higher priorities first, then in the order submitted.
+        @Override
+        public int compareTo(Task<?> other) {
+            final int byPriority = this.priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(this.sequence, other.sequence);
+        }
+    }
+}
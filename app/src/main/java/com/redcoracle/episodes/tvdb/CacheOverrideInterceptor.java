@@ -0,0 +1,48 @@
+package com.redcoracle.episodes.tvdb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Network interceptor which replaces the Cache-Control header of successful
+ * responses whose path matches one of its rules, so that the HTTP cache keeps
+ * them for as long as we know they're unlikely to change rather than for
+ * whatever the server suggests.
+ */
+public class CacheOverrideInterceptor implements Interceptor {
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<String> cacheControls = new ArrayList<>();
+
+    public CacheOverrideInterceptor maxAge(String pathPattern, long duration, TimeUnit unit) {
+        patterns.add(Pattern.compile(pathPattern));
+        cacheControls.add(String.format("public, max-age=%d", unit.toSeconds(duration)));
+        return this;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        final Request request = chain.request();
+        final Response response = chain.proceed(request);
+        if (!"GET".equals(request.method()) || !response.isSuccessful()) {
+            return response;
+        }
+
+        final String path = request.url().encodedPath();
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(path).matches()) {
+                return response.newBuilder()
+                        .removeHeader("Pragma")
+                        .header("Cache-Control", cacheControls.get(i))
+                        .build();
+            }
+        }
+        return response;
+    }
+}
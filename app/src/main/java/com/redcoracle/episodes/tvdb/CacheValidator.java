@@ -0,0 +1,63 @@
+package com.redcoracle.episodes.tvdb;
+
+import android.text.TextUtils;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+
+/**
+ * The HTTP validators returned with a response, which are sent back with a
+ * later request for the same resource so the server can reply with a 304
+ * rather than the full body if it hasn't changed.
+ */
+public class CacheValidator {
+    private final String etag;
+    private final String lastModified;
+
+    public CacheValidator(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    static CacheValidator fromHeaders(Headers headers) {
+        final String etag = headers.get("ETag");
+        final String lastModified = headers.get("Last-Modified");
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        return new CacheValidator(etag, lastModified);
+    }
+
+    Request apply(Request request) {
+        final Request.Builder builder = request.newBuilder();
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CacheValidator)) {
+            return false;
+        }
+        final CacheValidator other = (CacheValidator)o;
+        return TextUtils.equals(etag, other.etag) && TextUtils.equals(lastModified, other.lastModified);
+    }
+
+    @Override
+    public int hashCode() {
+        return (etag != null ? etag.hashCode() : 0) * 31 + (lastModified != null ? lastModified.hashCode() : 0);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+}
@@ -17,6 +17,7 @@
 
 package com.redcoracle.episodes.tvdb;
 
+import android.os.Process;
 import android.util.Log;
 
 import com.redcoracle.episodes.EpisodesApplication;
@@ -33,22 +34,51 @@ import com.uwetrottmann.tmdb2.enumerations.ExternalSource;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import retrofit2.Call;
 import retrofit2.Response;
 
 public class Client {
     private static final String TAG = Client.class.getName();
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    // Seasons are fetched and parsed on their own threads, never the main
+    // thread, which is where an enqueued call's callbacks would run. As
+    // executed calls bypass the dispatcher's per-host limit, this matches it.
+    private static final int NUM_SEASON_FETCHERS = 4;
+    private static final long SEASON_FETCHER_KEEP_ALIVE_SECONDS = 30;
+    private static final ThreadPoolExecutor seasonFetchers = createSeasonFetchers();
+
     private final Tmdb tmdb;
+    private final ConditionalRequestInterceptor conditionalRequests;
 
     public Client() {
-        this.tmdb = EpisodesApplication.getInstance().getTmdbClient();
+        this(EpisodesApplication.getInstance().getTmdbClient(),
+                EpisodesApplication.getInstance().getConditionalRequests());
     }
 
-    public List<Show> searchShows(String query, String language) {
-        this.tmdb.searchService().tv(query, null, language, null, false);
+    public Client(Tmdb tmdb) {
+        this(tmdb, null);
+    }
 
+    public Client(Tmdb tmdb, ConditionalRequestInterceptor conditionalRequests) {
+        this.tmdb = tmdb;
+        this.conditionalRequests = conditionalRequests;
+    }
+
+    public List<Show> searchShows(String query, String language) {
         try {
             final TvShowResultsPage results = this.tmdb
                     .searchService()
@@ -68,6 +98,18 @@ public class Client {
     }
 
     public Show getShow(HashMap<String, String> showIds, String language) {
+        return getShow(showIds, language, null);
+    }
+
+    /**
+     * Fetches a show and its episodes, using refreshState to only fetch what
+     * changed since it was last refreshed. If the show itself is unchanged
+     * the returned show only has its IDs set and refreshState is marked as
+     * not modified. If it is an ended show whose details haven't changed its
+     * episodes aren't fetched at all. refreshState is updated with the
+     * details and validators from this fetch, ready to be stored.
+     */
+    public Show getShow(HashMap<String, String> showIds, String language, RefreshState refreshState) {
         Show show = null;
         try {
             TvShow lookupResult = null;
@@ -75,9 +117,24 @@ public class Client {
 
             if (showIds.get("tmdbId") != null) {
                 int tmdbId = Integer.parseInt(showIds.get("tmdbId"));
-                Response<TvShow> seriesResponse = this.tmdb.tvService().tv(tmdbId, language, includes).execute();
+                Call<TvShow> call = this.tmdb.tvService().tv(tmdbId, language, includes);
+                Response<TvShow> seriesResponse = executeConditional(
+                        call, refreshState != null ? refreshState.getShowValidator() : null);
+                if (seriesResponse.code() == HTTP_NOT_MODIFIED && refreshState != null) {
+                    Log.d(TAG, String.format("Show %d not modified", tmdbId));
+                    refreshState.setShowModified(false);
+                    show = new Show();
+                    show.setId(tmdbId);
+                    show.setTmdbId(tmdbId);
+                    show.setLanguage(language);
+                    show.setRefreshState(refreshState);
+                    return show;
+                }
                 if (seriesResponse.isSuccessful() && seriesResponse.body() != null) {
                     lookupResult = seriesResponse.body();
+                    if (refreshState != null) {
+                        refreshState.setShowValidator(CacheValidator.fromHeaders(seriesResponse.headers()));
+                    }
                 }
             }
 
@@ -112,7 +169,17 @@ public class Client {
             if (lookupResult != null) {
                 final GetShowParser parser = new GetShowParser();
                 show = parser.parse(lookupResult, language);
-                show.setEpisodes(getEpisodesForShow(lookupResult, language));
+                if (show != null) {
+                    if (refreshState != null && refreshState.isUnchangedEndedShow(lookupResult)) {
+                        Log.d(TAG, String.format("Show %d has ended and is unchanged, skipping episodes", show.getTmdbId()));
+                    } else {
+                        show.setEpisodes(getEpisodesForShow(lookupResult, language, refreshState));
+                    }
+                    if (refreshState != null) {
+                        refreshState.update(lookupResult);
+                        show.setRefreshState(refreshState);
+                    }
+                }
             }
 
         } catch (IOException e) {
@@ -145,23 +212,154 @@ public class Client {
         }
     }
 
+    private <T> Response<T> executeConditional(Call<T> call, CacheValidator validator) throws IOException {
+        if (conditionalRequests == null || validator == null) {
+            return call.execute();
+        }
+        conditionalRequests.expect(call.request(), validator);
+        try {
+            return call.execute();
+        } finally {
+            conditionalRequests.forget(call.request());
+        }
+    }
+
     public ArrayList<Episode> getEpisodesForShow(TvShow series, String language) {
+        return getEpisodesForShow(series, language, null);
+    }
+
+    private ArrayList<Episode> getEpisodesForShow(TvShow series, String language, RefreshState refreshState) {
         int episode_count = series.number_of_episodes != null ? series.number_of_episodes : 64;
         ArrayList<Episode> episodes = new ArrayList<>(episode_count);
-        final GetEpisodesParser episodesParser = new GetEpisodesParser();
-        if (series.number_of_seasons != null) {
-            for (TvSeason season : series.seasons) {
+        if (series.number_of_seasons == null || series.seasons == null) {
+            return episodes;
+        }
+
+        // Request every season at once, so a refresh takes about as long as
+        // the slowest season rather than the sum of them all. Seasons are
+        // fetched and parsed on seasonFetchers, whose size caps how many
+        // run concurrently against the host.
+        final int numSeasons = series.seasons.size();
+        final List<Call<TvSeason>> calls = new ArrayList<>(numSeasons);
+        final List<Future<SeasonResult>> fetches = new ArrayList<>(numSeasons);
+        for (TvSeason season : series.seasons) {
+            final AppendToResponse includes = new AppendToResponse(AppendToResponseItem.EXTERNAL_IDS);
+            final Call<TvSeason> call = this.tmdb.tvSeasonsService().season(series.id, season.season_number, language, includes);
+            calls.add(call);
+            if (refreshState != null && conditionalRequests != null && season.season_number != null) {
+                conditionalRequests.expect(call.request(), refreshState.getSeasonValidators().get(season.season_number));
+            }
+            fetches.add(seasonFetchers.submit(() -> fetchSeason(series, season, call)));
+        }
+
+        // Results are applied here, in season order, regardless of the order
+        // they arrived in, so refreshState is only touched by this thread.
+        try {
+            for (int i = 0; i < numSeasons; i++) {
+                final TvSeason season = series.seasons.get(i);
+                SeasonResult result = null;
                 try {
-                    AppendToResponse includes = new AppendToResponse(AppendToResponseItem.EXTERNAL_IDS);
-                    season = this.tmdb.tvSeasonsService().season(series.id, season.season_number, language, includes).execute().body();
-                    if (season != null) {
-                        episodes.addAll(episodesParser.parse(season.episodes));
+                    result = fetches.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, String.format("Error fetching season %s of show %d", season.season_number, series.id),
+                            e.getCause());
+                } catch (InterruptedException e) {
+                    // Seasons without a result are kept as they are, as
+                    // though they'd failed, rather than have their stored
+                    // episodes deleted for being missing.
+                    for (int j = i; j < numSeasons; j++) {
+                        fetches.get(j).cancel(true);
+                        calls.get(j).cancel();
+                        keepSeason(refreshState, series.seasons.get(j));
+                    }
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                if (result == null) {
+                    keepSeason(refreshState, season);
+                } else if (result.notModified) {
+                    if (refreshState != null && season.season_number != null) {
+                        refreshState.addUnchangedSeason(season.season_number);
+                    }
+                } else {
+                    episodes.addAll(result.episodes);
+                    if (refreshState != null && season.season_number != null) {
+                        refreshState.putSeasonValidator(season.season_number, result.validator);
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
                 }
             }
+        } finally {
+            if (conditionalRequests != null) {
+                for (Call<TvSeason> call : calls) {
+                    conditionalRequests.forget(call.request());
+                }
+            }
+        }
+
+        if (refreshState != null) {
+            final Set<Integer> seasonNumbers = new HashSet<>();
+            for (TvSeason season : series.seasons) {
+                seasonNumbers.add(season.season_number);
+            }
+            refreshState.retainSeasons(seasonNumbers);
         }
         return episodes;
     }
+
+    // Fetches and parses a season. Returns null if it couldn't be fetched.
+    private static SeasonResult fetchSeason(TvShow series, TvSeason season, Call<TvSeason> call) throws IOException {
+        final Response<TvSeason> response = call.execute();
+        final TvSeason body = response.body();
+        if (response.code() == HTTP_NOT_MODIFIED) {
+            return new SeasonResult(null, null, true);
+        } else if (response.isSuccessful() && body != null && body.episodes != null) {
+            return new SeasonResult(new GetEpisodesParser().parse(body.episodes),
+                    CacheValidator.fromHeaders(response.headers()), false);
+        } else {
+            Log.w(TAG, String.format("Received response %d for season %s of show %d",
+                    response.code(), season.season_number, series.id));
+            return null;
+        }
+    }
+
+    // Leaves a season which couldn't be fetched as it is, rather than have
+    // its stored episodes deleted for being missing, and makes sure it's
+    // fetched in full next time.
+    private static void keepSeason(RefreshState refreshState, TvSeason season) {
+        if (refreshState != null && season.season_number != null) {
+            refreshState.addUnchangedSeason(season.season_number);
+            refreshState.putSeasonValidator(season.season_number, null);
+        }
+    }
+
+    private static class SeasonResult {
+        private final ArrayList<Episode> episodes;
+        private final CacheValidator validator;
+        private final boolean notModified;
+
+        SeasonResult(ArrayList<Episode> episodes, CacheValidator validator, boolean notModified) {
+            this.episodes = episodes;
+            this.validator = validator;
+            this.notModified = notModified;
+        }
+    }
+
+    private static ThreadPoolExecutor createSeasonFetchers() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, String.format(Locale.ROOT, "Season fetcher #%d", threadCount.incrementAndGet()));
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                NUM_SEASON_FETCHERS,
+                NUM_SEASON_FETCHERS,
+                SEASON_FETCHER_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
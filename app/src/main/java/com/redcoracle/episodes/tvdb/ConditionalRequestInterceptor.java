@@ -0,0 +1,56 @@
+package com.redcoracle.episodes.tvdb;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Makes requests conditional. Retrofit gives no way to add headers to a
+ * single call of the TMDB services, so Client registers the validator for a
+ * call's URL before executing it and this adds the matching headers as the
+ * request goes out. A 304 response is passed through to the caller as is.
+ */
+public class ConditionalRequestInterceptor implements Interceptor {
+    private final Map<String, CacheValidator> validators = new ConcurrentHashMap<>();
+    private final AtomicInteger conditionalCount = new AtomicInteger();
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+
+    void expect(Request request, CacheValidator validator) {
+        if (validator != null) {
+            validators.put(request.url().toString(), validator);
+        }
+    }
+
+    void forget(Request request) {
+        validators.remove(request.url().toString());
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        final CacheValidator validator = validators.remove(request.url().toString());
+        if (validator == null) {
+            return chain.proceed(request);
+        }
+
+        conditionalCount.incrementAndGet();
+        final Response response = chain.proceed(validator.apply(request));
+        if (response.code() == 304) {
+            notModifiedCount.incrementAndGet();
+        }
+        return response;
+    }
+
+    public int conditionalCount() {
+        return conditionalCount.get();
+    }
+
+    public int notModifiedCount() {
+        return notModifiedCount.get();
+    }
+}
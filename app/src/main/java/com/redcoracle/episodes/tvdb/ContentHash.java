@@ -0,0 +1,55 @@
+package com.redcoracle.episodes.tvdb;
+
+import java.util.Date;
+
+/**
+ * 64-bit FNV-1a hash over a sequence of fields, used to tell whether the
+ * details fetched for a show or episode differ from those last stored
+ * without comparing every column.
+ */
+class ContentHash {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET_BASIS;
+
+    private void mix(int b) {
+        hash ^= b & 0xff;
+        hash *= PRIME;
+    }
+
+    ContentHash add(String value) {
+        if (value == null) {
+            mix(0);
+        } else {
+            mix(1);
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                mix(c);
+                mix(c >>> 8);
+            }
+        }
+        // Separates fields, so "ab","c" and "a","bc" hash differently.
+        mix(0xff);
+        return this;
+    }
+
+    ContentHash add(long value) {
+        for (int i = 0; i < 64; i += 8) {
+            mix((int)(value >>> i));
+        }
+        return this;
+    }
+
+    ContentHash add(Integer value) {
+        return value == null ? add((String)null) : add((long)value);
+    }
+
+    ContentHash add(Date value) {
+        return value == null ? add((String)null) : add(value.getTime());
+    }
+
+    long get() {
+        return hash;
+    }
+}
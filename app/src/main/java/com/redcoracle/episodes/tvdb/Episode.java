@@ -34,6 +34,22 @@ public class Episode {
 	Episode() {
 	}
 
+	// Hash of every field written to the database, so refreshes can skip
+	// rewriting episodes which haven't changed.
+	public long contentHash() {
+		return new ContentHash()
+			.add(tvdbId)
+			.add(tmdbId)
+			.add(imdbId)
+			.add(name)
+			.add(language)
+			.add(overview)
+			.add(episodeNumber)
+			.add(seasonNumber)
+			.add(firstAired)
+			.get();
+	}
+
 	public String identifier() {
 		return String.format("%s-%s", this.seasonNumber, this.episodeNumber);
 	}
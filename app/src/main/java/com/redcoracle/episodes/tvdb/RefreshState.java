@@ -0,0 +1,149 @@
+package com.redcoracle.episodes.tvdb;
+
+import android.util.SparseArray;
+
+import com.uwetrottmann.tmdb2.entities.TvShow;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * What was known about a show as of its last refresh, used to make the next
+ * refresh incremental. Client reads the stored validators and details from
+ * this and updates it with the ones from the responses it receives.
+ */
+public class RefreshState {
+    private static final String STATUS_ENDED = "Ended";
+    private static final String STATUS_CANCELED = "Canceled";
+
+    private String status;
+    private Date lastAirDate;
+    private int numberOfEpisodes;
+    private CacheValidator showValidator;
+    private final SparseArray<CacheValidator> seasonValidators = new SparseArray<>();
+    // Until loaded from the database, whatever is stored is assumed stale.
+    private boolean seasonValidatorsChanged = true;
+
+    // Set by Client during a refresh.
+    private boolean showModified = true;
+    private final Set<Integer> unchangedSeasons = new HashSet<>();
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Date getLastAirDate() {
+        return lastAirDate;
+    }
+
+    public void setLastAirDate(Date lastAirDate) {
+        this.lastAirDate = lastAirDate;
+    }
+
+    public int getNumberOfEpisodes() {
+        return numberOfEpisodes;
+    }
+
+    public void setNumberOfEpisodes(int numberOfEpisodes) {
+        this.numberOfEpisodes = numberOfEpisodes;
+    }
+
+    public CacheValidator getShowValidator() {
+        return showValidator;
+    }
+
+    public void setShowValidator(CacheValidator showValidator) {
+        this.showValidator = showValidator;
+    }
+
+    public SparseArray<CacheValidator> getSeasonValidators() {
+        return seasonValidators;
+    }
+
+    public void putSeasonValidator(int seasonNumber, CacheValidator validator) {
+        final CacheValidator previous = seasonValidators.get(seasonNumber);
+        if (validator != null ? validator.equals(previous) : previous == null) {
+            return;
+        }
+        if (validator != null) {
+            seasonValidators.put(seasonNumber, validator);
+        } else {
+            seasonValidators.remove(seasonNumber);
+        }
+        seasonValidatorsChanged = true;
+    }
+
+    /**
+     * Whether the season validators differ from those stored, and so need
+     * writing back.
+     */
+    public boolean isSeasonValidatorsChanged() {
+        return seasonValidatorsChanged;
+    }
+
+    // Called once the season validators have been loaded from the database.
+    public void markSeasonValidatorsStored() {
+        seasonValidatorsChanged = false;
+    }
+
+    /**
+     * Whether the show itself was returned by the last refresh. If not the
+     * server replied 304 and nothing about the show or its episodes changed.
+     */
+    public boolean isShowModified() {
+        return showModified;
+    }
+
+    void setShowModified(boolean showModified) {
+        this.showModified = showModified;
+    }
+
+    /**
+     * Seasons whose episodes weren't refetched, either because the server
+     * replied 304 or because the request failed. Their stored episodes must
+     * be left as they are rather than treated as removed.
+     */
+    public Set<Integer> getUnchangedSeasons() {
+        return unchangedSeasons;
+    }
+
+    void addUnchangedSeason(int seasonNumber) {
+        unchangedSeasons.add(seasonNumber);
+    }
+
+    void retainSeasons(Set<Integer> seasonNumbers) {
+        for (int i = seasonValidators.size() - 1; i >= 0; i--) {
+            if (!seasonNumbers.contains(seasonValidators.keyAt(i))) {
+                seasonValidators.removeAt(i);
+                seasonValidatorsChanged = true;
+            }
+        }
+    }
+
+    /**
+     * Whether series is an ended show whose details match those stored, in
+     * which case its episodes won't have changed either and don't need to
+     * be fetched.
+     */
+    boolean isUnchangedEndedShow(TvShow series) {
+        if (!STATUS_ENDED.equals(status) && !STATUS_CANCELED.equals(status)) {
+            return false;
+        }
+        final int seriesEpisodes = series.number_of_episodes != null ? series.number_of_episodes : 0;
+        final boolean sameAirDate = lastAirDate == null
+                ? series.last_air_date == null
+                : lastAirDate.equals(series.last_air_date);
+        return status.equals(series.status) && sameAirDate && numberOfEpisodes == seriesEpisodes;
+    }
+
+    void update(TvShow series) {
+        status = series.status;
+        lastAirDate = series.last_air_date;
+        numberOfEpisodes = series.number_of_episodes != null ? series.number_of_episodes : 0;
+    }
+}
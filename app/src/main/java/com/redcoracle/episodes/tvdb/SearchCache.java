@@ -0,0 +1,195 @@
+package com.redcoracle.episodes.tvdb;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two level cache of show search results, keyed by normalised query and
+ * language. Recent searches are kept in memory, and a larger number on disk
+ * in the app's cache directory so they survive the process being killed.
+ */
+public class SearchCache {
+    private static final String TAG = SearchCache.class.getName();
+
+    private static final int MEMORY_ENTRIES = 32;
+    private static final int DISK_ENTRIES = 128;
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final LruCache<String, List<Show>> memory = new LruCache<>(MEMORY_ENTRIES);
+    private final File directory;
+
+    public SearchCache(File directory) {
+        this.directory = directory;
+    }
+
+    static String key(String query, String language) {
+        final String normalised = query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return String.format("%s\n%s", language != null ? language : "", normalised);
+    }
+
+    List<Show> get(String key) {
+        final List<Show> cached = memory.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final List<Show> stored = read(key);
+        if (stored != null) {
+            memory.put(key, stored);
+        }
+        return stored;
+    }
+
+    void put(String key, List<Show> shows) {
+        final List<Show> entry = Collections.unmodifiableList(new ArrayList<>(shows));
+        memory.put(key, entry);
+        write(key, entry);
+    }
+
+    private synchronized List<Show> read(String key) {
+        final File file = file(key);
+        if (!file.exists()) {
+            return null;
+        }
+        if (System.currentTimeMillis() - file.lastModified() > MAX_AGE_MILLIS) {
+            file.delete();
+            return null;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] bytes = new byte[(int)file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                final int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+
+            final JSONObject json = new JSONObject(new String(bytes, 0, read, StandardCharsets.UTF_8));
+            if (!key.equals(json.getString("key"))) {
+                return null;
+            }
+            final JSONArray results = json.getJSONArray("results");
+            final List<Show> shows = new ArrayList<>(results.length());
+            for (int i = 0; i < results.length(); i++) {
+                shows.add(fromJson(results.getJSONObject(i)));
+            }
+            return Collections.unmodifiableList(shows);
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, String.format("Error reading cached search results: %s", e.toString()));
+            file.delete();
+            return null;
+        }
+    }
+
+    private synchronized void write(String key, List<Show> shows) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+
+        final File file = file(key);
+        final File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            final JSONArray results = new JSONArray();
+            for (Show show : shows) {
+                results.put(toJson(show));
+            }
+            final JSONObject json = new JSONObject();
+            json.put("key", key);
+            json.put("results", results);
+
+            try (OutputStream out = new FileOutputStream(temp)) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, String.format("Error caching search results: %s", e.toString()));
+            temp.delete();
+        }
+
+        trim();
+    }
+
+    // Deletes the least recently written entries beyond DISK_ENTRIES.
+    private void trim() {
+        final File[] files = directory.listFiles();
+        if (files == null || files.length <= DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+        for (int i = DISK_ENTRIES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    private File file(String key) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            final byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JSONObject toJson(Show show) throws JSONException {
+        final JSONObject json = new JSONObject();
+        json.put("id", show.getId());
+        json.put("tmdbId", show.getTmdbId());
+        json.put("name", show.getName());
+        json.put("language", show.getLanguage());
+        json.put("overview", show.getOverview());
+        if (show.getFirstAired() != null) {
+            json.put("firstAired", show.getFirstAired().getTime());
+        }
+        return json;
+    }
+
+    private static Show fromJson(JSONObject json) throws JSONException {
+        final Show show = new Show();
+        show.setId(json.getInt("id"));
+        show.setTmdbId(json.getInt("tmdbId"));
+        show.setName(json.optString("name", null));
+        show.setLanguage(json.optString("language", null));
+        show.setOverview(json.optString("overview", null));
+        if (json.has("firstAired")) {
+            show.setFirstAired(new Date(json.getLong("firstAired")));
+        }
+        return show;
+    }
+}
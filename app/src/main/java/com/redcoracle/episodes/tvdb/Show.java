@@ -33,6 +33,7 @@ public class Show {
 	private String fanartPath;
 	private String posterPath;
 	private List<Episode> episodes;
+	private RefreshState refreshState;
 
 	public Show() {
 		name = "";
@@ -45,6 +46,23 @@ public class Show {
 		episodes = null;
 	}
 
+	// Hash of every field written to the database, so refreshes can skip
+	// rewriting shows which haven't changed.
+	public long contentHash() {
+		return new ContentHash()
+			.add(tvdbId)
+			.add(tmdbId)
+			.add(imdbId)
+			.add(name)
+			.add(language)
+			.add(overview)
+			.add(firstAired)
+			.add(bannerPath)
+			.add(fanartPath)
+			.add(posterPath)
+			.get();
+	}
+
 	public int getId() {
 		return id;
 	}
@@ -140,4 +158,12 @@ public class Show {
 	public void setEpisodes(List<Episode> episodes) {
 		this.episodes = episodes;
 	}
+
+	public RefreshState getRefreshState() {
+		return refreshState;
+	}
+
+	void setRefreshState(RefreshState refreshState) {
+		this.refreshState = refreshState;
+	}
 }
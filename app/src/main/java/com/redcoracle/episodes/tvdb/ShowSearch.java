@@ -0,0 +1,117 @@
+package com.redcoracle.episodes.tvdb;
+
+import android.util.Log;
+
+import com.uwetrottmann.tmdb2.Tmdb;
+import com.uwetrottmann.tmdb2.entities.TvShowResultsPage;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Searches TMDB for shows, falling back to looser searches when a query
+ * finds nothing. All of the searches are sent at once and the first one,
+ * in order of preference, with any results is used. Results are cached.
+ */
+public class ShowSearch {
+    private static final String TAG = ShowSearch.class.getName();
+
+    private final Tmdb tmdb;
+    private final SearchCache cache;
+
+    public ShowSearch(Tmdb tmdb, SearchCache cache) {
+        this.tmdb = tmdb;
+        this.cache = cache;
+    }
+
+    public List<Show> search(String query, String language) {
+        final String key = SearchCache.key(query, language);
+        final List<Show> cached = cache.get(key);
+        if (cached != null) {
+            Log.d(TAG, String.format("Search cache hit for \"%s\"", query));
+            return cached;
+        }
+
+        // In order of preference: the query as typed in the user's language,
+        // then with "and" spelled as "&", then the query in any language.
+        final List<Search> searches = new ArrayList<>(3);
+        searches.add(new Search(query, language));
+        if (query.contains(" and ")) {
+            searches.add(new Search(query.replace(" and ", " & "), null));
+        }
+        searches.add(new Search(query, null));
+
+        for (Search search : searches) {
+            search.start();
+        }
+
+        List<Show> results = new LinkedList<>();
+        try {
+            for (Search search : searches) {
+                final List<Show> found = search.await();
+                if (found != null && found.size() > 0) {
+                    results = found;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Search search : searches) {
+                search.call.cancel();
+            }
+        }
+
+        // Empty results aren't cached, so a search which failed or found
+        // nothing is retried next time.
+        if (results.size() > 0) {
+            cache.put(key, results);
+        }
+        return results;
+    }
+
+    private class Search implements Callback<TvShowResultsPage> {
+        private final String language;
+        private final Call<TvShowResultsPage> call;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile List<Show> results;
+
+        Search(String query, String language) {
+            this.language = language;
+            this.call = tmdb.searchService().tv(query, null, language, null, false);
+        }
+
+        void start() {
+            call.enqueue(this);
+        }
+
+        List<Show> await() throws InterruptedException {
+            done.await();
+            return results;
+        }
+
+        @Override
+        public void onResponse(Call<TvShowResultsPage> call, Response<TvShowResultsPage> response) {
+            if (response.isSuccessful() && response.body() != null) {
+                results = new SearchShowsParser().parse(response.body(), language);
+            } else {
+                Log.w(TAG, String.format("Received response %d searching for shows", response.code()));
+            }
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(Call<TvShowResultsPage> call, Throwable t) {
+            if (!call.isCanceled()) {
+                Log.w(TAG, t);
+            }
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.redcoracle.episodes.tvdb;
+
+import java.util.Locale;
+
+/**
+ * Builds URLs for TMDB's image CDN. TMDB serves each image at a fixed set
+ * of widths, so rather than always fetching a large rendition the smallest
+ * one at least as wide as the view it's displayed in is chosen.
+ */
+public class TmdbImages {
+    private static final String BASE_URL = "https://image.tmdb.org/t/p/";
+
+    // Widths TMDB serves each type of image at, smallest first. Anything
+    // wider than the largest is capped to it rather than fetching the
+    // original, which can be several times larger again.
+    private static final int[] BACKDROP_WIDTHS = {300, 780, 1280};
+    private static final int[] POSTER_WIDTHS = {92, 154, 185, 342, 500, 780};
+
+    /** Returns the height of a backdrop, which are 16:9, of the given width. */
+    public static int backdropHeight(int width) {
+        return width * 9 / 16;
+    }
+
+    /** Returns the width of a poster, which are 2:3, of the given height. */
+    public static int posterWidth(int height) {
+        return height * 2 / 3;
+    }
+
+    /** Returns the name of the backdrop rendition chosen for targetWidth, eg. w780. */
+    public static String backdropRendition(int targetWidth) {
+        return rendition(BACKDROP_WIDTHS, targetWidth);
+    }
+
+    /** Returns the name of the poster rendition chosen for targetWidth, eg. w342. */
+    public static String posterRendition(int targetWidth) {
+        return rendition(POSTER_WIDTHS, targetWidth);
+    }
+
+    /** Returns the URL of the image at path in the named rendition. */
+    public static String url(String rendition, String path) {
+        return String.format(Locale.ROOT, "%s%s/%s", BASE_URL, rendition, path);
+    }
+
+    private static String rendition(int[] widths, int targetWidth) {
+        for (int width : widths) {
+            if (width >= targetWidth) {
+                return "w" + width;
+            }
+        }
+        return "w" + widths[widths.length - 1];
+    }
+}